@@ -0,0 +1,106 @@
+package eu.the5zig.reconnect.benchmark;
+
+import eu.the5zig.reconnect.KickClassifier;
+import eu.the5zig.reconnect.KickClassifier.Action;
+import eu.the5zig.reconnect.KickClassifier.KickClass;
+import eu.the5zig.reconnect.KickClassifier.MatchType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the classification of kick messages in ReconnectBridge.handle(Kick).<br>
+ * {@link #massKick()} is the common case of a server shutting down, where all players are kicked with the same message
+ * and the result comes from the cache. {@link #distinctMessages(Cursor)} uses more different messages than the
+ * classifier caches, so every call has to match the rules of the configured kind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KickClassifierBenchmark {
+
+	private static final int MESSAGES = 1024;
+	private static final String SHUTDOWN_RAW = "{\"text\":\"Server closed\"}";
+	private static final BaseComponent[] SHUTDOWN_REASON = {new TextComponent("Server closed")};
+
+	/**
+	 * The rule that matches the distinct messages: "literal", "prefix", "regex" or "none".
+	 */
+	@Param({"literal", "prefix", "regex", "none"})
+	public String rule;
+
+	private KickClassifier classifier;
+	private String[] rawMessages;
+	private BaseComponent[][] reasons;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int next;
+
+		private int next() {
+			return next = (next + 1) & (MESSAGES - 1);
+		}
+
+	}
+
+	@Setup
+	public void setUp() {
+		// The rules of the default config and its examples.
+		classifier = new KickClassifier(new KickClass("default", Action.DISCONNECT, -1))
+				.addRule(MatchType.LITERAL, "Server closed", new KickClass("shutdown", Action.RECONNECT, -1))
+				.addRule(MatchType.LITERAL, "Server is in maintenance mode", new KickClass("maintenance", Action.FALLBACK, -1))
+				.addRule(MatchType.PREFIX, "Server is restarting", new KickClass("restart", Action.RECONNECT, 120000))
+				.addRule(MatchType.REGEX, ".*(crashed|timed out).*", new KickClass("crash", Action.RECONNECT, -1));
+
+		rawMessages = new String[MESSAGES];
+		reasons = new BaseComponent[MESSAGES][];
+		for (int i = 0; i < MESSAGES; i++) {
+			String text;
+			switch (rule) {
+				case "literal":
+					// Same text, but a different color, so that the raw messages differ.
+					text = "\u00A7" + Integer.toHexString(i % 16) + "Server closed";
+					break;
+				case "prefix":
+					text = "Server is restarting in " + i + " seconds";
+					break;
+				case "regex":
+					text = "The server crashed (error " + i + ")";
+					break;
+				default:
+					text = "You have been banned (#" + i + ")";
+					break;
+			}
+			rawMessages[i] = "{\"text\":\"" + text + "\",\"id\":" + i + "}";
+			reasons[i] = new BaseComponent[]{new TextComponent(text)};
+		}
+	}
+
+	@Benchmark
+	public KickClass massKick() {
+		return classifier.classify(SHUTDOWN_RAW, SHUTDOWN_REASON);
+	}
+
+	@Benchmark
+	public KickClass distinctMessages(Cursor cursor) {
+		int i = cursor.next();
+		return classifier.classify(rawMessages[i], reasons[i]);
+	}
+
+}
@@ -0,0 +1,170 @@
+package eu.the5zig.reconnect.benchmark;
+
+import eu.the5zig.reconnect.util.MessageTemplate;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.Title;
+import net.md_5.bungee.connection.InitialHandler;
+import net.md_5.bungee.netty.ChannelWrapper;
+import net.md_5.bungee.protocol.MinecraftEncoder;
+import net.md_5.bungee.protocol.Protocol;
+import net.md_5.bungee.protocol.ProtocolConstants;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the rendering of the reconnecting messages and sending them to all waiting players, which the
+ * StatusBroadcaster does once per ui-refresh-time.<br>
+ * Each player is a real UserConnection whose channel runs the real MinecraftEncoder and then discards the bytes, so
+ * {@link #sendActionBarToEachPlayer(Players)} pays for serializing the packet once per player, like BungeeCord's own API
+ * does, while the broadcasts only write the pre-encoded frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageTemplateBenchmark {
+
+	private static final String MESSAGE = "&7Reconnecting{%dots%}";
+
+	private MessageTemplate template;
+	private int frame;
+
+	@State(Scope.Benchmark)
+	public static class Players {
+
+		@Param({"100", "1000"})
+		public int count;
+
+		private List<UserConnection> users;
+
+		@Setup
+		public void setUp() {
+			initProxy();
+			users = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				users.add(createUser(i, ProtocolConstants.MINECRAFT_1_8));
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			for (UserConnection user : users) {
+				user.getCh().getHandle().close();
+			}
+		}
+
+	}
+
+	@Setup
+	public void setUp() {
+		initProxy();
+		template = MessageTemplate.compile(MESSAGE, 0, 100, 0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		template.release();
+	}
+
+	/**
+	 * Renders all frames of a message, which happens for each message whenever the config is loaded.
+	 */
+	@Benchmark
+	public MessageTemplate compile() {
+		MessageTemplate compiled = MessageTemplate.compile(MESSAGE, 0, 100, 0);
+		compiled.release();
+		return compiled;
+	}
+
+	@Benchmark
+	public void broadcastActionBar(Players players) {
+		template.broadcastActionBar(players.users, frame++);
+	}
+
+	@Benchmark
+	public void broadcastTitle(Players players) {
+		template.broadcastTitle(players.users, frame++);
+	}
+
+	@Benchmark
+	public void sendActionBarToEachPlayer(Players players) {
+		int frame = this.frame++;
+		for (UserConnection user : players.users) {
+			template.sendActionBar(user, frame);
+		}
+	}
+
+	/**
+	 * Sets a mocked ProxyServer, which is needed to create the users and the Title of old clients. JMH doesn't define in
+	 * which order the states are set up, so every state calls this.
+	 */
+	private static synchronized void initProxy() {
+		if (ProxyServer.getInstance() == null) {
+			ProxyServer proxy = mock(ProxyServer.class);
+			when(proxy.createTitle()).thenAnswer(new Answer<Title>() {
+				@Override
+				public Title answer(InvocationOnMock invocation) {
+					return mock(Title.class);
+				}
+			});
+			ProxyServer.setInstance(proxy);
+		}
+	}
+
+	private static UserConnection createUser(int id, final int version) {
+		EmbeddedChannel channel = new EmbeddedChannel(new DiscardHandler(), new MinecraftEncoder(Protocol.GAME, true, version));
+		ChannelWrapper ch = new ChannelWrapper(channel.pipeline().firstContext());
+
+		// Mockito fills in a stack trace for every call, which would cost more than the write itself, so the players are
+		// real objects. The InitialHandler is never used as a handler, it only has to report the version.
+		InitialHandler pendingConnection = new InitialHandler(null, null) {
+			@Override
+			public int getVersion() {
+				return version;
+			}
+		};
+
+		return new UserConnection(ProxyServer.getInstance(), ch, "Player" + id, pendingConnection);
+	}
+
+	/**
+	 * Stands in for the socket: releases everything that is written, so that nothing piles up in the channel.
+	 */
+	private static class DiscardHandler extends ChannelOutboundHandlerAdapter {
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+			ReferenceCountUtil.release(msg);
+			promise.trySuccess();
+		}
+
+	}
+
+}
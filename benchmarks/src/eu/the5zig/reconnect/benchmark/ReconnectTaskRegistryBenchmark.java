@@ -0,0 +1,91 @@
+package eu.the5zig.reconnect.benchmark;
+
+import eu.the5zig.reconnect.ReconnectTask;
+import eu.the5zig.reconnect.ReconnectTaskRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the operations on the reconnect task registry in Reconnect while all players of a server are kicked at once
+ * by several Netty threads. Run it with -t to change the amount of threads.<br>
+ * {@link #kickAndRelease(Cursor)} registers a task and removes it again like a finished task does,
+ * {@link #duplicateKick(Cursor)} is a second kick of a player that is already waiting and {@link #isWaiting(Cursor)}
+ * is the lookup done for each chat message and plugin message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ReconnectTaskRegistryBenchmark {
+
+	private static final int PLAYERS = 1 << 14;
+
+	private final ReconnectTaskRegistry registry = new ReconnectTaskRegistry();
+	private UUID[] players;
+	private ReconnectTask[] tasks;
+	/**
+	 * Players that already have got a task.
+	 */
+	private UUID[] waiting;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int next = ThreadLocalRandom.current().nextInt(PLAYERS);
+
+		private int next() {
+			return next = (next + 1) & (PLAYERS - 1);
+		}
+
+	}
+
+	@Setup
+	public void setUp() {
+		players = new UUID[PLAYERS];
+		tasks = new ReconnectTask[PLAYERS];
+		waiting = new UUID[PLAYERS];
+		for (int i = 0; i < PLAYERS; i++) {
+			players[i] = UUID.randomUUID();
+			tasks[i] = mock(ReconnectTask.class);
+			waiting[i] = UUID.randomUUID();
+			registry.register(waiting[i], mock(ReconnectTask.class));
+		}
+	}
+
+	@Benchmark
+	public boolean kickAndRelease(Cursor cursor) {
+		int i = cursor.next();
+		// Several threads may pick the same player, just like a player may be kicked twice at once.
+		return registry.register(players[i], tasks[i]) && registry.remove(players[i], tasks[i]);
+	}
+
+	@Benchmark
+	public boolean duplicateKick(Cursor cursor) {
+		int i = cursor.next();
+		return registry.register(waiting[i], tasks[i]);
+	}
+
+	@Benchmark
+	public boolean isWaiting(Cursor cursor) {
+		return registry.contains(waiting[cursor.next()]);
+	}
+
+}
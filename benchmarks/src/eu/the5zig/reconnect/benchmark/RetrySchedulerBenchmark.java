@@ -0,0 +1,144 @@
+package eu.the5zig.reconnect.benchmark;
+
+import eu.the5zig.reconnect.util.RetryScheduler;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
+import net.md_5.bungee.scheduler.BungeeScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures scheduling the reconnect tries. The reconnect tries of a player are scheduled on his EventLoop and the server
+ * probes on the RetryScheduler, while they used to be scheduled on the BungeeCord scheduler and then handed over to
+ * another thread with runAsync (the old Utils.scheduleAsync).<br>
+ * The scheduleAndCancel benchmarks schedule a try and cancel it right away, like it happens to the next try of every
+ * player who has been reconnected. The BungeeCord scheduler blocks a thread of the plugin for every scheduled task
+ * until its delay is over, even if it has been canceled, so the delay is kept short. The retry benchmarks schedule a
+ * try without a delay and wait until it has run. The RetryScheduler only runs its tasks once per tick of its wheel,
+ * which is precise enough for the probes, but not for a try that is due now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RetrySchedulerBenchmark {
+
+	private static final long DELAY_MILLIS = 50;
+	private static final Runnable NOOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private NioEventLoopGroup group;
+	private EventLoop eventLoop;
+	private RetryScheduler retryScheduler;
+	private ExecutorService executorService;
+	private Plugin plugin;
+	private BungeeScheduler bungeeScheduler;
+
+	@Setup
+	public void setUp() {
+		group = new NioEventLoopGroup(1);
+		eventLoop = group.next();
+		retryScheduler = new RetryScheduler(Logger.getAnonymousLogger());
+		executorService = Executors.newCachedThreadPool();
+		plugin = new Plugin() {
+			@Override
+			public ExecutorService getExecutorService() {
+				return executorService;
+			}
+		};
+		bungeeScheduler = new BungeeScheduler();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		retryScheduler.shutdown();
+		group.shutdownGracefully(0, 0, TimeUnit.SECONDS).await(5, TimeUnit.SECONDS);
+		executorService.shutdownNow();
+	}
+
+	@Benchmark
+	public boolean eventLoopScheduleAndCancel() {
+		return eventLoop.schedule(NOOP, DELAY_MILLIS, TimeUnit.MILLISECONDS).cancel(false);
+	}
+
+	@Benchmark
+	public boolean retrySchedulerScheduleAndCancel() {
+		return retryScheduler.schedule(NOOP, DELAY_MILLIS, TimeUnit.MILLISECONDS).cancel();
+	}
+
+	@Benchmark
+	public void bungeeSchedulerScheduleAndCancel() {
+		scheduleAsync(NOOP, DELAY_MILLIS).cancel();
+	}
+
+	@Benchmark
+	public void eventLoopRetry() throws InterruptedException {
+		Retry retry = new Retry();
+		eventLoop.schedule(retry, 0, TimeUnit.MILLISECONDS);
+		retry.await();
+	}
+
+	@Benchmark
+	public void retrySchedulerRetry() throws InterruptedException {
+		Retry retry = new Retry();
+		retryScheduler.schedule(retry, 0, TimeUnit.MILLISECONDS);
+		retry.await();
+	}
+
+	@Benchmark
+	public void bungeeSchedulerRetry() throws InterruptedException {
+		Retry retry = new Retry();
+		scheduleAsync(retry, 0);
+		retry.await();
+	}
+
+	/**
+	 * The old Utils.scheduleAsync.
+	 */
+	private ScheduledTask scheduleAsync(final Runnable runnable, long delayMillis) {
+		return bungeeScheduler.schedule(plugin, new Runnable() {
+			@Override
+			public void run() {
+				bungeeScheduler.runAsync(plugin, runnable);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static class Retry implements Runnable {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			done.countDown();
+		}
+
+		private void await() throws InterruptedException {
+			done.await();
+		}
+
+	}
+
+}
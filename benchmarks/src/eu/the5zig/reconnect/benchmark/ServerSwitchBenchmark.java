@@ -0,0 +1,160 @@
+package eu.the5zig.reconnect.benchmark;
+
+import eu.the5zig.reconnect.Reconnect;
+import eu.the5zig.reconnect.ReconnectConfig;
+import eu.the5zig.reconnect.net.ReconnectBridge;
+import eu.the5zig.reconnect.state.MemoryStateStore;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.ServerConnection;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.Title;
+import net.md_5.bungee.api.event.ServerSwitchEvent;
+import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.api.plugin.PluginDescription;
+import net.md_5.bungee.config.Configuration;
+import net.md_5.bungee.connection.InitialHandler;
+import net.md_5.bungee.netty.ChannelWrapper;
+import net.md_5.bungee.netty.HandlerBoss;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures Reconnect.onServerSwitch(ServerSwitchEvent), which runs whenever a player joins or switches a server.<br>
+ * {@link #switchToServer()} installs the ReconnectBridge, {@link #switchToIgnoredServer()} keeps the DownstreamBridge
+ * of BungeeCord and {@link #switchToIgnoredServerInstallingBridge()} is the old behaviour, which installed the
+ * ReconnectBridge on ignored servers as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerSwitchBenchmark {
+
+	private ProxyServer proxy;
+	private Reconnect instance;
+	private UserConnection user;
+	private UserConnection ignoredUser;
+	private ServerSwitchEvent event;
+	private ServerSwitchEvent ignoredEvent;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		BungeeServerInfo server = new BungeeServerInfo("lobby", new InetSocketAddress("localhost", 25566), "", false);
+		BungeeServerInfo ignored = new BungeeServerInfo("event", new InetSocketAddress("localhost", 25567), "", false);
+
+		proxy = mock(ProxyServer.class);
+		when(proxy.getLogger()).thenReturn(Logger.getAnonymousLogger());
+		when(proxy.getServerInfo("event")).thenReturn(ignored);
+		// The messages of the config are compiled with the Title of the proxy.
+		when(proxy.createTitle()).thenAnswer(new Answer<Title>() {
+			@Override
+			public Title answer(InvocationOnMock invocation) {
+				return mock(Title.class);
+			}
+		});
+		ProxyServer.setInstance(proxy);
+
+		instance = new Reconnect();
+		enable(instance, proxy);
+		Configuration configuration = new Configuration();
+		configuration.set("ignored-servers", Collections.singletonList("event"));
+		setConfig(instance, new ReconnectConfig(instance, configuration));
+		instance.setStateStore(new MemoryStateStore());
+
+		user = createUser(server);
+		ignoredUser = createUser(ignored);
+		event = new ServerSwitchEvent(user);
+		ignoredEvent = new ServerSwitchEvent(ignoredUser);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (UserConnection user : new UserConnection[]{this.user, ignoredUser}) {
+			user.getCh().getHandle().close();
+			user.getServer().getCh().getHandle().close();
+		}
+	}
+
+	@Benchmark
+	public void switchToServer() {
+		instance.onServerSwitch(event);
+	}
+
+	@Benchmark
+	public void switchToIgnoredServer() {
+		instance.onServerSwitch(ignoredEvent);
+	}
+
+	@Benchmark
+	public void switchToIgnoredServerInstallingBridge() {
+		ServerConnection server = ignoredUser.getServer();
+		ReconnectBridge bridge = new ReconnectBridge(instance, proxy, ignoredUser, server);
+		server.getCh().getHandle().pipeline().get(HandlerBoss.class).setHandler(bridge);
+		instance.onServerSwitch(ignoredEvent);
+	}
+
+	/**
+	 * Creates a player who is connected to a server. The connection to the server has got a HandlerBoss, just like the
+	 * ones created by BungeeCord.
+	 */
+	private UserConnection createUser(BungeeServerInfo info) {
+		final UUID uniqueId = UUID.randomUUID();
+		EmbeddedChannel channel = new EmbeddedChannel(new HandlerBoss());
+		UserConnection user = new UserConnection(proxy, new ChannelWrapper(channel.pipeline().firstContext()), "Player", new InitialHandler(proxy, null) {
+			@Override
+			public UUID getUniqueId() {
+				return uniqueId;
+			}
+		});
+		EmbeddedChannel serverChannel = new EmbeddedChannel(new HandlerBoss());
+		user.setServer(new ServerConnection(new ChannelWrapper(serverChannel.pipeline().firstContext()), info));
+		return user;
+	}
+
+	/**
+	 * Initializes the plugin like the PluginManager of BungeeCord does when it loads the plugin.
+	 */
+	private static void enable(Plugin plugin, ProxyServer proxy) throws ReflectiveOperationException {
+		PluginDescription description = new PluginDescription();
+		description.setName("Reconnect");
+		Method init = Plugin.class.getDeclaredMethod("init", ProxyServer.class, PluginDescription.class);
+		init.setAccessible(true);
+		init.invoke(plugin, proxy, description);
+	}
+
+	/**
+	 * Sets the config without loading the config file from the data folder of the plugin.
+	 */
+	private static void setConfig(Reconnect instance, ReconnectConfig config) throws ReflectiveOperationException {
+		Field field = Reconnect.class.getDeclaredField("config");
+		field.setAccessible(true);
+		field.set(instance, config);
+	}
+
+}
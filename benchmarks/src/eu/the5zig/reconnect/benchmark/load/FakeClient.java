@@ -0,0 +1,194 @@
+package eu.the5zig.reconnect.benchmark.load;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import net.md_5.bungee.protocol.DefinedPacket;
+import net.md_5.bungee.protocol.Varint21FrameDecoder;
+import net.md_5.bungee.protocol.Varint21LengthFieldPrepender;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A Minecraft 1.8 client that logs into the proxy in offline mode and then stays idle. It only answers keep alives and
+ * remembers whether it has been kicked by the proxy, which means that the plugin gave up on it.
+ */
+public class FakeClient {
+
+	private final String name;
+
+	private volatile Channel channel;
+	private volatile boolean joined;
+	private volatile int serverSwitches;
+	private volatile String kickReason;
+
+	public FakeClient(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Connects to the proxy and logs in.
+	 *
+	 * @param group The event loop group of the client.
+	 * @param host  The host of the proxy.
+	 * @param port  The port of the proxy.
+	 * @return the future of the connection attempt.
+	 */
+	public ChannelFuture connect(EventLoopGroup group, final String host, final int port) {
+		return new Bootstrap()
+				.group(group)
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						ch.pipeline().addLast(new Varint21FrameDecoder(), new Varint21LengthFieldPrepender(), new ClientHandler());
+					}
+				})
+				.connect(host, port)
+				.addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) {
+						if (!future.isSuccess()) {
+							kickReason = "Could not connect: " + future.cause();
+							return;
+						}
+						channel = future.channel();
+						channel.write(Packets.handshake(host, port, Packets.STATE_LOGIN));
+						channel.writeAndFlush(Packets.loginStart(name));
+					}
+				});
+	}
+
+	public void disconnect() {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true, if the client has joined the game and is still connected to the proxy.
+	 */
+	public boolean isPlaying() {
+		return joined && kickReason == null && channel != null && channel.isActive();
+	}
+
+	/**
+	 * @return the amount of Respawn packets, which the proxy sends whenever the player has been moved to a server.
+	 */
+	public int getServerSwitches() {
+		return serverSwitches;
+	}
+
+	/**
+	 * @return the reason the client has been kicked with, or null if it hasn't been kicked.
+	 */
+	public String getKickReason() {
+		return kickReason;
+	}
+
+	private class ClientHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+		private final Inflater inflater = new Inflater();
+		private boolean compression;
+		private boolean login = true;
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) throws DataFormatException {
+			ByteBuf packet = buf;
+			if (compression) {
+				int length = DefinedPacket.readVarInt(buf);
+				if (length != 0) {
+					packet = inflate(buf, length);
+				}
+			}
+			try {
+				handle(ctx, packet);
+			} finally {
+				if (packet != buf) {
+					packet.release();
+				}
+			}
+		}
+
+		private void handle(ChannelHandlerContext ctx, ByteBuf packet) {
+			int id = DefinedPacket.readVarInt(packet);
+			if (login) {
+				if (id == Packets.SET_COMPRESSION) {
+					compression = DefinedPacket.readVarInt(packet) >= 0;
+				} else if (id == Packets.LOGIN_SUCCESS) {
+					login = false;
+				} else if (id == Packets.LOGIN_DISCONNECT) {
+					kickReason = DefinedPacket.readString(packet);
+					ctx.close();
+				}
+				return;
+			}
+			if (id == Packets.KEEP_ALIVE) {
+				send(ctx, Packets.keepAlive(DefinedPacket.readVarInt(packet)));
+			} else if (id == Packets.JOIN_GAME) {
+				joined = true;
+			} else if (id == Packets.RESPAWN) {
+				serverSwitches++;
+			} else if (id == Packets.DISCONNECT) {
+				kickReason = DefinedPacket.readString(packet);
+				ctx.close();
+			}
+		}
+
+		private ByteBuf inflate(ByteBuf buf, int length) throws DataFormatException {
+			byte[] compressed = new byte[buf.readableBytes()];
+			buf.readBytes(compressed);
+			byte[] data = new byte[length];
+			inflater.setInput(compressed);
+			inflater.inflate(data);
+			inflater.reset();
+			return Unpooled.wrappedBuffer(data);
+		}
+
+		/**
+		 * Sends a packet, uncompressed if compression has been enabled by the proxy.
+		 */
+		private void send(ChannelHandlerContext ctx, ByteBuf packet) {
+			if (compression) {
+				ByteBuf uncompressed = Unpooled.buffer(packet.readableBytes() + 1);
+				DefinedPacket.writeVarInt(0, uncompressed);
+				uncompressed.writeBytes(packet);
+				packet.release();
+				packet = uncompressed;
+			}
+			ctx.writeAndFlush(packet);
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) {
+			inflater.end();
+			if (kickReason == null) {
+				kickReason = "Connection lost";
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			kickReason = "Exception: " + cause;
+			ctx.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,143 @@
+package eu.the5zig.reconnect.benchmark.load;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Restarts a server under a running BungeeCord with the plugin while many players are online, and reports how long it
+ * took until all players were back on the server and how many pings and logins the plugin needed for that.<br>
+ * The harness runs the backend server (a {@link StandInServer}) and the players ({@link FakeClient}s) itself, so all
+ * connections go over the loopback interface. The proxy has to be started separately with online_mode set to false,
+ * connection_throttle set to -1 (or the join rate below it) and its default server pointing at the backend port.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar eu.the5zig.reconnect.benchmark.load.LoadHarness [--proxy localhost:25577]
+ * [--backend-port 25566] [--players 1000] [--join-rate 100] [--downtime 10000] [--rounds 3] [--timeout 120000]}
+ */
+public class LoadHarness {
+
+	private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+	static {
+		DEFAULTS.put("proxy", "localhost:25577");
+		DEFAULTS.put("backend-port", "25566");
+		DEFAULTS.put("players", "1000");
+		DEFAULTS.put("join-rate", "100");
+		DEFAULTS.put("downtime", "10000");
+		DEFAULTS.put("rounds", "3");
+		DEFAULTS.put("timeout", "120000");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = new HashMap<>(DEFAULTS);
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 == args.length || !DEFAULTS.containsKey(args[i].substring(2))) {
+				System.err.println("Unknown option " + args[i] + "! Known options: " + DEFAULTS.keySet());
+				System.exit(1);
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+		String[] proxy = options.get("proxy").split(":");
+		String proxyHost = proxy[0];
+		int proxyPort = proxy.length > 1 ? Integer.parseInt(proxy[1]) : 25577;
+		int players = Integer.parseInt(options.get("players"));
+		int joinRate = Integer.parseInt(options.get("join-rate"));
+		long downtime = Long.parseLong(options.get("downtime"));
+		int rounds = Integer.parseInt(options.get("rounds"));
+		long timeout = Long.parseLong(options.get("timeout"));
+
+		EventLoopGroup group = new NioEventLoopGroup();
+		StandInServer server = new StandInServer(Integer.parseInt(options.get("backend-port")), group);
+		List<FakeClient> clients = new ArrayList<>(players);
+		try {
+			server.start();
+
+			System.out.println("Joining " + players + " players at " + joinRate + " players/s...");
+			for (int i = 0; i < players; i++) {
+				FakeClient client = new FakeClient("Player" + i);
+				clients.add(client);
+				client.connect(group, proxyHost, proxyPort);
+				Thread.sleep(1000 / Math.max(1, joinRate));
+			}
+			if (!awaitAllPlaying(server, clients, timeout)) {
+				System.out.println("Only " + countPlaying(clients) + " of " + players + " players joined within " + timeout + " ms, "
+						+ "check the proxy log and connection_throttle!");
+				return;
+			}
+			System.out.println("All players joined.");
+
+			for (int round = 1; round <= rounds; round++) {
+				int playing = countPlaying(clients);
+				long killedAt = System.currentTimeMillis();
+				server.kill();
+				Thread.sleep(downtime);
+				server.start();
+
+				boolean recovered = awaitAllPlaying(server, clients, timeout);
+				long recoveredAt = System.currentTimeMillis();
+				long firstLogin = server.getFirstLoginAt();
+				System.out.println(String.format("Round %d: %d/%d players back %d ms after the restart%s (first after %s), "
+								+ "%d connections, %d logins, %d pings, %d players kicked from the proxy, %d ms total outage",
+						round, server.getLoggedIn().size(), playing, recoveredAt - server.getStartedAt(), recovered ? "" : " when the timeout was reached",
+						firstLogin == 0 ? "-" : (firstLogin - server.getStartedAt()) + " ms", server.getConnections(), server.getLogins(),
+						server.getPings(), playing - countPlaying(clients), recoveredAt - killedAt));
+			}
+
+			Map<String, Integer> kickReasons = new HashMap<>();
+			for (FakeClient client : clients) {
+				if (client.getKickReason() != null) {
+					Integer count = kickReasons.get(client.getKickReason());
+					kickReasons.put(client.getKickReason(), count == null ? 1 : count + 1);
+				}
+			}
+			for (Map.Entry<String, Integer> entry : kickReasons.entrySet()) {
+				System.out.println(entry.getValue() + " players kicked with: " + entry.getKey());
+			}
+		} finally {
+			for (FakeClient client : clients) {
+				client.disconnect();
+			}
+			server.kill();
+			group.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * Waits until all clients that are still connected to the proxy have logged into the server since it has been
+	 * started.
+	 *
+	 * @return true, if all players are back, false if the timeout has been reached.
+	 */
+	private static boolean awaitAllPlaying(StandInServer server, List<FakeClient> clients, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (System.currentTimeMillis() < deadline) {
+			boolean all = true;
+			for (FakeClient client : clients) {
+				if (client.getKickReason() == null && (!client.isPlaying() || !server.getLoggedIn().contains(client.getName()))) {
+					all = false;
+					break;
+				}
+			}
+			if (all) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	private static int countPlaying(List<FakeClient> clients) {
+		int playing = 0;
+		for (FakeClient client : clients) {
+			if (client.isPlaying()) {
+				playing++;
+			}
+		}
+		return playing;
+	}
+
+}
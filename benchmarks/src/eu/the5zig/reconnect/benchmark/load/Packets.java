@@ -0,0 +1,94 @@
+package eu.the5zig.reconnect.benchmark.load;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.md_5.bungee.protocol.DefinedPacket;
+
+/**
+ * The few packets of the Minecraft 1.8 protocol (version 47) the load harness needs. Frames are prefixed by BungeeCord's
+ * own Varint21LengthFieldPrepender, so the packets here only contain the packet id and the fields.
+ */
+final class Packets {
+
+	static final int PROTOCOL_VERSION = 47;
+
+	static final int STATE_STATUS = 1;
+	static final int STATE_LOGIN = 2;
+	/**
+	 * Not part of the protocol, the state of a connection once the login has finished.
+	 */
+	static final int STATE_PLAY = 3;
+
+	// Serverbound
+	static final int HANDSHAKE = 0x00;
+	static final int STATUS_REQUEST = 0x00;
+	static final int STATUS_PING = 0x01;
+	static final int LOGIN_START = 0x00;
+	static final int KEEP_ALIVE = 0x00;
+
+	// Clientbound
+	static final int STATUS_RESPONSE = 0x00;
+	static final int STATUS_PONG = 0x01;
+	static final int LOGIN_DISCONNECT = 0x00;
+	static final int LOGIN_SUCCESS = 0x02;
+	static final int SET_COMPRESSION = 0x03;
+	static final int JOIN_GAME = 0x01;
+	static final int RESPAWN = 0x07;
+	static final int DISCONNECT = 0x40;
+
+	private Packets() {
+	}
+
+	static ByteBuf create(int id) {
+		ByteBuf buf = Unpooled.buffer();
+		DefinedPacket.writeVarInt(id, buf);
+		return buf;
+	}
+
+	static ByteBuf handshake(String host, int port, int nextState) {
+		ByteBuf buf = create(HANDSHAKE);
+		DefinedPacket.writeVarInt(PROTOCOL_VERSION, buf);
+		DefinedPacket.writeString(host, buf);
+		buf.writeShort(port);
+		DefinedPacket.writeVarInt(nextState, buf);
+		return buf;
+	}
+
+	static ByteBuf loginStart(String name) {
+		ByteBuf buf = create(LOGIN_START);
+		DefinedPacket.writeString(name, buf);
+		return buf;
+	}
+
+	static ByteBuf loginSuccess(String uuid, String name) {
+		ByteBuf buf = create(LOGIN_SUCCESS);
+		DefinedPacket.writeString(uuid, buf);
+		DefinedPacket.writeString(name, buf);
+		return buf;
+	}
+
+	static ByteBuf joinGame(int entityId) {
+		ByteBuf buf = create(JOIN_GAME);
+		buf.writeInt(entityId);
+		buf.writeByte(0); // Survival
+		buf.writeByte(0); // Overworld
+		buf.writeByte(0); // Peaceful
+		buf.writeByte(100); // Max players
+		DefinedPacket.writeString("flat", buf);
+		buf.writeBoolean(false);
+		return buf;
+	}
+
+	static ByteBuf keepAlive(int id) {
+		ByteBuf buf = create(KEEP_ALIVE);
+		DefinedPacket.writeVarInt(id, buf);
+		return buf;
+	}
+
+	static ByteBuf disconnect(String reason) {
+		ByteBuf buf = create(DISCONNECT);
+		DefinedPacket.writeString("{\"text\":\"" + reason + "\"}", buf);
+		return buf;
+	}
+
+}
@@ -0,0 +1,187 @@
+package eu.the5zig.reconnect.benchmark.load;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import net.md_5.bungee.protocol.DefinedPacket;
+import net.md_5.bungee.protocol.Varint21FrameDecoder;
+import net.md_5.bungee.protocol.Varint21LengthFieldPrepender;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal Minecraft 1.8 server in offline mode that BungeeCord can ping and log players into. It can be killed and
+ * restarted like a real server and counts what it sees while it is back up, so that the load harness can tell how
+ * quickly and with how much overhead the plugin brought all players back.
+ */
+public class StandInServer {
+
+	private final int port;
+	private final EventLoopGroup group;
+	private final ChannelGroup players = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+	private final Set<String> loggedIn = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger logins = new AtomicInteger();
+	private final AtomicInteger pings = new AtomicInteger();
+	private final AtomicInteger entityIds = new AtomicInteger();
+
+	private volatile Channel listener;
+	private volatile long startedAt;
+	private volatile long firstLoginAt;
+
+	public StandInServer(int port, EventLoopGroup group) {
+		this.port = port;
+		this.group = group;
+		group.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				// BungeeCord times out connections without any traffic after 30 seconds.
+				players.writeAndFlush(Packets.keepAlive((int) System.nanoTime()));
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Binds the server and resets all counters.
+	 */
+	public void start() throws InterruptedException {
+		loggedIn.clear();
+		connections.set(0);
+		logins.set(0);
+		pings.set(0);
+		firstLoginAt = 0;
+		startedAt = System.currentTimeMillis();
+		listener = new ServerBootstrap()
+				.group(group)
+				.channel(NioServerSocketChannel.class)
+				.option(ChannelOption.SO_REUSEADDR, true)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						connections.incrementAndGet();
+						ch.pipeline().addLast(new Varint21FrameDecoder(), new Varint21LengthFieldPrepender(), new ConnectionHandler());
+					}
+				})
+				.bind(port).sync().channel();
+	}
+
+	/**
+	 * Kicks all players like a server that is shutting down and unbinds the server.
+	 */
+	public void kill() throws InterruptedException {
+		players.writeAndFlush(Packets.disconnect("Server closed")).awaitUninterruptibly();
+		players.close().awaitUninterruptibly();
+		if (listener != null) {
+			listener.close().sync();
+			listener = null;
+		}
+	}
+
+	/**
+	 * @return the names of all players that logged in since the server has been started.
+	 */
+	public Set<String> getLoggedIn() {
+		return loggedIn;
+	}
+
+	/**
+	 * @return the amount of players that are currently connected.
+	 */
+	public int getOnline() {
+		return players.size();
+	}
+
+	public int getConnections() {
+		return connections.get();
+	}
+
+	public int getLogins() {
+		return logins.get();
+	}
+
+	public int getPings() {
+		return pings.get();
+	}
+
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	/**
+	 * @return the time of the first login since the server has been started, or 0 if nobody logged in yet.
+	 */
+	public long getFirstLoginAt() {
+		return firstLoginAt;
+	}
+
+	private class ConnectionHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+		private int state = -1;
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) {
+			int id = DefinedPacket.readVarInt(buf);
+			if (state == -1) {
+				if (id != Packets.HANDSHAKE) {
+					ctx.close();
+					return;
+				}
+				DefinedPacket.readVarInt(buf);
+				DefinedPacket.readString(buf);
+				buf.readUnsignedShort();
+				state = DefinedPacket.readVarInt(buf);
+				if (state == Packets.STATE_STATUS) {
+					pings.incrementAndGet();
+				}
+			} else if (state == Packets.STATE_STATUS) {
+				if (id == Packets.STATUS_REQUEST) {
+					ByteBuf response = Packets.create(Packets.STATUS_RESPONSE);
+					DefinedPacket.writeString("{\"version\":{\"name\":\"1.8\",\"protocol\":" + Packets.PROTOCOL_VERSION + "},"
+							+ "\"players\":{\"max\":100000,\"online\":" + players.size() + "},\"description\":{\"text\":\"Stand-in\"}}", response);
+					ctx.writeAndFlush(response);
+				} else if (id == Packets.STATUS_PING) {
+					ByteBuf pong = Packets.create(Packets.STATUS_PONG);
+					pong.writeLong(buf.readLong());
+					ctx.writeAndFlush(pong).addListener(ChannelFutureListener.CLOSE);
+				}
+			} else if (state == Packets.STATE_LOGIN && id == Packets.LOGIN_START) {
+				String name = DefinedPacket.readString(buf);
+				logins.incrementAndGet();
+				state = Packets.STATE_PLAY;
+				UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+				ctx.write(Packets.loginSuccess(uuid.toString(), name));
+				ctx.writeAndFlush(Packets.joinGame(entityIds.incrementAndGet()));
+				players.add(ctx.channel());
+				if (firstLoginAt == 0) {
+					firstLoginAt = System.currentTimeMillis();
+				}
+				loggedIn.add(name);
+			}
+			// Everything the players send while they are playing is ignored.
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			ctx.close();
+		}
+
+	}
+
+}
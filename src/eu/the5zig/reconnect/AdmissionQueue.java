@@ -0,0 +1,151 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.BungeeServerInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases the players waiting for a server in batches as soon as that server answers again, so that the server
+ * won't have to handle hundreds of logins at the same time. Players with the highest priority are released first,
+ * players with the same priority in the order they have been waiting.
+ */
+public class AdmissionQueue {
+
+	private static final Comparator<ReconnectTask> BY_PRIORITY_AND_WAITING_TIME = new Comparator<ReconnectTask>() {
+		@Override
+		public int compare(ReconnectTask o1, ReconnectTask o2) {
+			int compare = Integer.compare(o2.getPriority(), o1.getPriority());
+			return compare != 0 ? compare : Long.compare(o1.getStartTime(), o2.getStartTime());
+		}
+	};
+
+	private final Reconnect instance;
+	private final BungeeServerInfo target;
+
+	private final PriorityQueue<ReconnectTask> waiting = new PriorityQueue<>(16, BY_PRIORITY_AND_WAITING_TIME);
+	/**
+	 * The tasks in the queue. It is only modified while holding the lock, but can be read without it, since every
+	 * reconnect task checks it on each retry.
+	 */
+	private final Set<ReconnectTask> queued = Collections.newSetFromMap(new ConcurrentHashMap<ReconnectTask, Boolean>());
+
+	// Metrics of the current (or last) drain.
+	private long drainStart;
+	private long lastDrainMillis;
+	private int maxDepth;
+	private int admitted;
+
+	public AdmissionQueue(Reconnect instance, BungeeServerInfo target) {
+		this.instance = instance;
+		this.target = target;
+	}
+
+	/**
+	 * Adds a reconnect task to the queue, if it isn't already queued. If batching is disabled, the task starts its
+	 * login immediately.
+	 *
+	 * @param task The ReconnectTask that wants to login.
+	 */
+	public void offer(ReconnectTask task) {
+		if (instance.getAdmissionBatchSize(target) <= 0) {
+			task.connect();
+			return;
+		}
+		synchronized (this) {
+			if (!queued.add(task)) {
+				return;
+			}
+			if (waiting.isEmpty() && drainStart == 0) {
+				drainStart = System.currentTimeMillis();
+				maxDepth = 0;
+				admitted = 0;
+			}
+			waiting.add(task);
+			maxDepth = Math.max(maxDepth, waiting.size());
+		}
+	}
+
+	/**
+	 * Removes a reconnect task from the queue, e.g. because it has been canceled.
+	 *
+	 * @param task The ReconnectTask that should be removed.
+	 */
+	public synchronized void remove(ReconnectTask task) {
+		if (queued.remove(task)) {
+			waiting.remove(task);
+		}
+	}
+
+	/**
+	 * @param task The ReconnectTask.
+	 * @return true, if the task is waiting for its turn in this queue.
+	 */
+	public boolean contains(ReconnectTask task) {
+		return queued.contains(task);
+	}
+
+	/**
+	 * Releases the next batch of players and lets them start their login.
+	 *
+	 * @param batchSize The maximum amount of players that should be released.
+	 */
+	public void drain(int batchSize) {
+		List<ReconnectTask> batch;
+		synchronized (this) {
+			if (waiting.isEmpty()) {
+				return;
+			}
+			batch = new ArrayList<>(Math.min(batchSize, waiting.size()));
+			while (batch.size() < batchSize && !waiting.isEmpty()) {
+				ReconnectTask task = waiting.poll();
+				queued.remove(task);
+				batch.add(task);
+			}
+			admitted += batch.size();
+			if (waiting.isEmpty()) {
+				lastDrainMillis = System.currentTimeMillis() - drainStart;
+				drainStart = 0;
+				instance.getMetrics().recordDrain(lastDrainMillis);
+				instance.getLogger().fine("Admitted " + admitted + " players to " + target.getName() + " within " + lastDrainMillis + "ms (max. queue depth: " + maxDepth + ")");
+			}
+		}
+		for (ReconnectTask task : batch) {
+			task.connect();
+		}
+	}
+
+	/**
+	 * @return the Server the players of this queue are waiting for.
+	 */
+	public BungeeServerInfo getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return the amount of players that are currently waiting for their turn.
+	 */
+	public synchronized int getDepth() {
+		return waiting.size();
+	}
+
+	/**
+	 * @return the maximum queue depth of the current or last drain.
+	 */
+	public synchronized int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return the amount of milliseconds it took to empty the queue the last time.
+	 */
+	public synchronized long getLastDrainMillis() {
+		return lastDrainMillis;
+	}
+
+}
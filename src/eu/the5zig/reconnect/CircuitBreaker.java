@@ -0,0 +1,142 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.BungeeServerInfo;
+
+/**
+ * A circuit breaker for a single server, which keeps players from waiting for a server that is not restarting but
+ * hard-down.<br>
+ * The breaker opens if the configured amount of logins of all players failed without any successful login in between,
+ * or if the server hasn't answered a single status ping for the configured down-time. Single failed pings are not
+ * counted, since a server doesn't answer them during every normal restart. While the breaker is open, all players
+ * waiting for the server are given up immediately. After the open-time, a single reconnect task may try the server
+ * again (half-open) while all others are still given up. If its login succeeds, the breaker closes again, otherwise
+ * it stays open for another open-time.<br>
+ * Servers with a planned restart are expected to be down for a while, so they are never given up early.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final Reconnect instance;
+	private final BungeeServerInfo target;
+
+	/**
+	 * Only modified while holding the lock, but read without it by every retry while the breaker is closed.
+	 */
+	private volatile State state = State.CLOSED;
+	private int failures;
+	private long openUntil;
+	/**
+	 * The reconnect task that may try the server while the breaker is half-open.
+	 */
+	private ReconnectTask probe;
+
+	public CircuitBreaker(Reconnect instance, BungeeServerInfo target) {
+		this.instance = instance;
+		this.target = target;
+	}
+
+	/**
+	 * Checks whether a reconnect task may still try to reconnect to the server. If the breaker is open and the
+	 * open-time is over, the first task that asks becomes the half-open probe.
+	 *
+	 * @param task The ReconnectTask that wants to try.
+	 * @return true, if the task may try, false if it should give up immediately.
+	 */
+	public boolean allowRequest(ReconnectTask task) {
+		if (state == State.CLOSED || instance.getPlannedRestart(target) != null) {
+			// The server is either fine or expected to be down for a while.
+			return true;
+		}
+		synchronized (this) {
+			switch (state) {
+				case CLOSED:
+					return true;
+				case OPEN:
+					if (System.currentTimeMillis() < openUntil) {
+						return false;
+					}
+					state = State.HALF_OPEN;
+					probe = task;
+					instance.getLogger().info("Circuit breaker of " + target.getName() + " is half-open, trying the server again");
+					return true;
+				default:
+					return probe == task;
+			}
+		}
+	}
+
+	/**
+	 * Records a successful login and closes the breaker.
+	 */
+	public synchronized void recordSuccess() {
+		if (state != State.CLOSED) {
+			instance.getLogger().info("Circuit breaker of " + target.getName() + " closed, the server is back");
+		}
+		state = State.CLOSED;
+		failures = 0;
+		probe = null;
+	}
+
+	/**
+	 * Records a failed login. Opens the breaker if the threshold has been reached or the half-open probe failed.
+	 */
+	public synchronized void recordFailure() {
+		if (instance.getPlannedRestart(target) != null) {
+			return;
+		}
+		int threshold = instance.getConfig().getCircuitBreakerThreshold();
+		if (state == State.HALF_OPEN) {
+			open();
+		} else if (state == State.CLOSED && threshold > 0 && ++failures >= threshold) {
+			instance.getLogger().warning("Circuit breaker of " + target.getName() + " opened after " + failures + " failed logins");
+			open();
+		}
+	}
+
+	/**
+	 * Records a status ping the server didn't answer. Opens the breaker if the server has been down for the configured
+	 * down-time, or again if it is still down while the breaker is half-open.
+	 *
+	 * @param downMillis The amount of milliseconds since the server answered the last time.
+	 */
+	public synchronized void recordDown(long downMillis) {
+		long downTime = instance.getConfig().getCircuitBreakerDownTime();
+		if (downTime <= 0 || instance.getPlannedRestart(target) != null) {
+			return;
+		}
+		if (state == State.HALF_OPEN || state == State.CLOSED && downMillis >= downTime) {
+			if (state == State.CLOSED) {
+				instance.getLogger().warning("Circuit breaker of " + target.getName() + " opened, the server didn't answer for " + downMillis + "ms");
+			}
+			open();
+		}
+	}
+
+	/**
+	 * Releases a reconnect task, e.g. because it has been canceled. If the task was the half-open probe, the next task
+	 * may try the server instead.
+	 *
+	 * @param task The ReconnectTask that is done.
+	 */
+	public synchronized void release(ReconnectTask task) {
+		if (state == State.HALF_OPEN && probe == task) {
+			state = State.OPEN;
+			openUntil = 0;
+			probe = null;
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openUntil = System.currentTimeMillis() + instance.getConfig().getCircuitBreakerOpenTime();
+		probe = null;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+}
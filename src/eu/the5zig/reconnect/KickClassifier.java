@@ -0,0 +1,202 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.chat.BaseComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides what should happen to a player after he has been kicked from a server, based on the kick message.<br>
+ * All rules are compiled when the config is loaded. Literal rules are looked up in a HashMap, prefix rules are checked
+ * longest prefix first and regex rules in the order they have been added. Literal rules take precedence over prefix
+ * rules, which take precedence over regex rules. Since a server that shuts down kicks all players with the same
+ * message, the results are cached by the raw kick message.
+ */
+public class KickClassifier {
+
+	/**
+	 * What should happen to a player that has been kicked.
+	 */
+	public enum Action {
+		/**
+		 * Try to reconnect the player to the server he has been kicked from.
+		 */
+		RECONNECT,
+		/**
+		 * Send the player to the fallback server immediately.
+		 */
+		FALLBACK,
+		/**
+		 * Disconnect the player from the proxy, like BungeeCord would do.
+		 */
+		DISCONNECT
+	}
+
+	/**
+	 * How the text of a rule is compared with the kick message.
+	 */
+	public enum MatchType {
+		LITERAL, PREFIX, REGEX
+	}
+
+	/**
+	 * A class of kick messages, e.g. "restart" or "maintenance", with its own behavior.
+	 */
+	public static class KickClass {
+
+		private final String name;
+		private final Action action;
+		private final long deadline;
+
+		/**
+		 * @param name     The name of the class, as used in the config.
+		 * @param action   What should happen to kicked players.
+		 * @param deadline The reconnect deadline in milliseconds, 0 to use the max-reconnect-tries or a negative value
+		 *                 to use the global retry deadline.
+		 */
+		public KickClass(String name, Action action, long deadline) {
+			this.name = name;
+			this.action = action;
+			this.deadline = deadline;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Action getAction() {
+			return action;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public String toString() {
+			return "KickClass(name=" + name + ", action=" + action + ", deadline=" + deadline + ")";
+		}
+
+	}
+
+	private static class Rule {
+
+		private final String prefix;
+		private final Pattern pattern;
+		private final KickClass kickClass;
+
+		private Rule(String prefix, Pattern pattern, KickClass kickClass) {
+			this.prefix = prefix;
+			this.pattern = pattern;
+			this.kickClass = kickClass;
+		}
+
+	}
+
+	private static final Comparator<Rule> LONGEST_PREFIX_FIRST = new Comparator<Rule>() {
+		@Override
+		public int compare(Rule o1, Rule o2) {
+			return Integer.compare(o2.prefix.length(), o1.prefix.length());
+		}
+	};
+
+	/**
+	 * The maximum amount of different kick messages whose classification is cached.
+	 */
+	private static final int CACHE_SIZE = 256;
+
+	private final KickClass defaultClass;
+	private final Map<String, KickClass> literals = new HashMap<>();
+	private final List<Rule> prefixes = new ArrayList<>();
+	private final List<Rule> patterns = new ArrayList<>();
+
+	/**
+	 * The classifications of the last kick messages. All players kicked by a shutdown look up the same message at the
+	 * same time, so reading the cache must not take a lock. Once it is full, it is cleared.
+	 */
+	private final ConcurrentHashMap<String, KickClass> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param defaultClass The KickClass of all kick messages that don't match any rule.
+	 */
+	public KickClassifier(KickClass defaultClass) {
+		this.defaultClass = defaultClass;
+	}
+
+	/**
+	 * Adds a rule to this classifier. Color codes in literal and prefix rules are ignored, just like in kick messages.
+	 * Rules must only be added before the classifier is used.
+	 *
+	 * @param type      How the text should be compared with the kick message.
+	 * @param text      The text, prefix or regex.
+	 * @param kickClass The KickClass of all kick messages that match this rule.
+	 * @return this classifier.
+	 * @throws java.util.regex.PatternSyntaxException if the type is REGEX and the text is not a valid regex.
+	 */
+	public KickClassifier addRule(MatchType type, String text, KickClass kickClass) {
+		switch (type) {
+			case LITERAL:
+				String literal = normalize(text);
+				if (!literals.containsKey(literal)) {
+					literals.put(literal, kickClass);
+				}
+				break;
+			case PREFIX:
+				prefixes.add(new Rule(normalize(text), null, kickClass));
+				Collections.sort(prefixes, LONGEST_PREFIX_FIRST);
+				break;
+			case REGEX:
+				patterns.add(new Rule(null, Pattern.compile(text), kickClass));
+				break;
+		}
+		return this;
+	}
+
+	/**
+	 * Classifies a kick message.
+	 *
+	 * @param message The raw (JSON) kick message, used as cache key.
+	 * @param reason  The already parsed kick message.
+	 * @return the KickClass of the message.
+	 */
+	public KickClass classify(String message, BaseComponent[] reason) {
+		KickClass kickClass = cache.get(message);
+		if (kickClass == null) {
+			kickClass = classify(ChatColor.stripColor(BaseComponent.toLegacyText(reason)));
+			if (cache.size() >= CACHE_SIZE) {
+				cache.clear();
+			}
+			cache.put(message, kickClass);
+		}
+		return kickClass;
+	}
+
+	private KickClass classify(String text) {
+		KickClass kickClass = literals.get(text);
+		if (kickClass != null) {
+			return kickClass;
+		}
+		for (Rule rule : prefixes) {
+			if (text.startsWith(rule.prefix)) {
+				return rule.kickClass;
+			}
+		}
+		for (Rule rule : patterns) {
+			if (rule.pattern.matcher(text).matches()) {
+				return rule.kickClass;
+			}
+		}
+		return defaultClass;
+	}
+
+	private static String normalize(String text) {
+		return ChatColor.stripColor(ChatColor.translateAlternateColorCodes('&', text));
+	}
+
+}
@@ -0,0 +1,113 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.KickClassifier.Action;
+import eu.the5zig.reconnect.KickClassifier.KickClass;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A server that has been announced to restart soon.<br>
+ * All players that lose the connection to it are reconnected without looking at the kick message, and they are
+ * released in their own (usually smaller) batches once the server is back.
+ */
+public class PlannedRestart {
+
+	private final ServerInfo server;
+	private final long announceTime = System.currentTimeMillis();
+	private final long deadline;
+	private final int batchSize;
+	private final String priorityPermission;
+	private final KickClass kickClass;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+	/**
+	 * Whether each player has got the priority permission. The players of the server are looked up when the restart
+	 * is announced, so that the permission plugin isn't asked for all of them at once when they are kicked.
+	 */
+	private final ConcurrentHashMap<UUID, Boolean> priorities = new ConcurrentHashMap<>();
+
+	/**
+	 * @param server             The server that is about to restart.
+	 * @param deadline           The amount of milliseconds players wait for the server to come back.
+	 * @param batchSize          The maximum amount of players that are released per batch once it's back.
+	 * @param priorityPermission The permission of players that should be released first, may be empty.
+	 */
+	public PlannedRestart(ServerInfo server, long deadline, int batchSize, String priorityPermission) {
+		this.server = server;
+		this.deadline = deadline;
+		this.batchSize = batchSize;
+		this.priorityPermission = priorityPermission;
+		this.kickClass = new KickClass("planned-restart", Action.RECONNECT, deadline);
+	}
+
+	/**
+	 * Marks the restart as started, i.e. the first player lost the connection to the server.
+	 */
+	void markStarted() {
+		started.set(true);
+	}
+
+	/**
+	 * @return true, if at least one player lost the connection to the server since the restart has been announced.
+	 */
+	public boolean isStarted() {
+		return started.get();
+	}
+
+	/**
+	 * @return true, if the server didn't restart within the deadline after the restart has been announced.
+	 */
+	public boolean isExpired() {
+		return !started.get() && System.currentTimeMillis() - announceTime > deadline;
+	}
+
+	public ServerInfo getServer() {
+		return server;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public String getPriorityPermission() {
+		return priorityPermission;
+	}
+
+	/**
+	 * Looks up in advance whether a player of the server should be released first.
+	 *
+	 * @param player A player that is currently on the server.
+	 */
+	void prepare(ProxiedPlayer player) {
+		priorities.put(player.getUniqueId(), !priorityPermission.isEmpty() && player.hasPermission(priorityPermission));
+	}
+
+	/**
+	 * @param player The player that lost the connection to the server.
+	 * @return true, if the player has got the priority permission and should be released first.
+	 */
+	public boolean hasPriority(ProxiedPlayer player) {
+		Boolean priority = priorities.get(player.getUniqueId());
+		if (priority == null) {
+			// The player joined the server after the restart has been announced.
+			return !priorityPermission.isEmpty() && player.hasPermission(priorityPermission);
+		}
+		return priority;
+	}
+
+	/**
+	 * @return the KickClass all kick messages of the server are treated as during the restart.
+	 */
+	public KickClass getKickClass() {
+		return kickClass;
+	}
+
+}
@@ -1,18 +1,37 @@
 package eu.the5zig.reconnect;
 
-import com.google.common.base.Strings;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
+import eu.the5zig.reconnect.KickClassifier.KickClass;
 import eu.the5zig.reconnect.api.ServerReconnectEvent;
+import eu.the5zig.reconnect.net.ConnectRace;
+import eu.the5zig.reconnect.net.Limbo;
+import eu.the5zig.reconnect.net.PacketBufferManager;
 import eu.the5zig.reconnect.net.ReconnectBridge;
+import eu.the5zig.reconnect.state.MappedFileStateStore;
+import eu.the5zig.reconnect.state.MemoryStateStore;
+import eu.the5zig.reconnect.state.ReconnectState;
+import eu.the5zig.reconnect.state.ReconnectStateStore;
+import eu.the5zig.reconnect.util.RetryScheduler;
+import io.netty.channel.EventLoop;
+import net.md_5.bungee.BungeeServerInfo;
 import net.md_5.bungee.ServerConnection;
 import net.md_5.bungee.UserConnection;
-import net.md_5.bungee.api.ChatColor;
-import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.event.ChatEvent;
+import net.md_5.bungee.api.event.PlayerDisconnectEvent;
+import net.md_5.bungee.api.event.PluginMessageEvent;
+import net.md_5.bungee.api.event.ServerConnectEvent;
 import net.md_5.bungee.api.event.ServerSwitchEvent;
+import net.md_5.bungee.api.plugin.Command;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
 import net.md_5.bungee.config.Configuration;
 import net.md_5.bungee.config.ConfigurationProvider;
 import net.md_5.bungee.config.YamlConfiguration;
@@ -21,93 +40,210 @@ import net.md_5.bungee.netty.ChannelWrapper;
 import net.md_5.bungee.netty.HandlerBoss;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 public class Reconnect extends Plugin implements Listener {
 
-	private String reconnectingTitle = "&7Reconnecting{%dots%}";
-	private String reconnectingActionBar = "&a&lPlease do not leave! &7Reconnecting to server{%dots%}";
-	private String connectingTitle = "&aConnecting..";
-	private String connectingActionBar = "&7Connecting you to the server..";
-	private String failedTitle = "&cReconnecting failed!";
-	private String failedActionBar = "&eYou have been moved to the fallback server!";
-	private int maxReconnectTries = 20;
-	private int reconnectMillis = 1000;
-	private int reconnectTimeout = 5000;
-	private List<String> ignoredServers = new ArrayList<>();
-	private String shutdownMessage = "Server closed";
-	private Pattern shutdownPattern = null;
+	/**
+	 * The amount of seconds the messages of an old config are kept after a reload, since they might still be sent to
+	 * some players at that moment.
+	 */
+	private static final long RELEASE_DELAY_SECONDS = 10;
+
+	/**
+	 * The current config. It is replaced as a whole when the config is reloaded, see {@link ReconnectConfig}.
+	 */
+	private volatile ReconnectConfig config;
+
+	/**
+	 * The timing wheel all server probes and status broadcasts are scheduled on.
+	 */
+	private RetryScheduler retryScheduler;
+
+	private final ReconnectMetrics metrics = new ReconnectMetrics();
+
+	/**
+	 * The learned restart durations and connect latencies of all servers, see {@link ServerProfiles}.
+	 */
+	private final ServerProfiles serverProfiles = new ServerProfiles();
+
+	/**
+	 * Stores which players are waiting for which server, see {@link ReconnectStateStore}.
+	 */
+	private volatile ReconnectStateStore stateStore;
+
+	/**
+	 * Keeps the packets players send while they are waiting for a reconnect, see {@link PacketBufferManager}.
+	 */
+	private final PacketBufferManager packetBuffers = new PacketBufferManager(this);
+
+	/**
+	 * The BungeeCord tasks that run at an interval from the config. They are rescheduled whenever the config is reloaded.
+	 */
+	private final List<ScheduledTask> periodicTasks = new ArrayList<>();
+
+	/**
+	 * All reconnect tasks, see {@link ReconnectTaskRegistry}.
+	 */
+	private final ReconnectTaskRegistry reconnectTasks = new ReconnectTaskRegistry();
+
+	/**
+	 * A Map containing the availability prober of each server players are waiting for.
+	 */
+	private final ConcurrentHashMap<BungeeServerInfo, ServerProber> probers = new ConcurrentHashMap<>();
+
+	/**
+	 * A Map containing the admission queue of each server players are waiting for.
+	 */
+	private final ConcurrentHashMap<BungeeServerInfo, AdmissionQueue> admissionQueues = new ConcurrentHashMap<>();
+
+	/**
+	 * A Map containing the circuit breaker of each server players have been waiting for.
+	 */
+	private final ConcurrentHashMap<BungeeServerInfo, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	/**
+	 * A Map containing the logins of all players that are racing several servers of a group, see {@link ConnectRace}.
+	 */
+	private final ConcurrentHashMap<UUID, ConnectRace> connectRaces = new ConcurrentHashMap<>();
 
 	/**
-	 * A HashMap containing all reconnect tasks.
+	 * A Map containing all servers that have been announced to restart soon, by their name.
 	 */
-	private HashMap<UUID, ReconnectTask> reconnectTasks = new HashMap<>();
+	private final ConcurrentHashMap<String, PlannedRestart> plannedRestarts = new ConcurrentHashMap<>();
 
 	@Override
 	public void onEnable() {
+		retryScheduler = new RetryScheduler(getLogger());
+
 		// register Listener
 		getProxy().getPluginManager().registerListener(this, this);
+		getProxy().getPluginManager().registerCommand(this, new ReconnectCommand(this));
 
 		// load Configuration
-		loadConfig();
+		try {
+			config = loadConfig();
+		} catch (IOException e) {
+			getLogger().warning("Could not load config, using default values...");
+			e.printStackTrace();
+			config = new ReconnectConfig(this, new Configuration());
+		}
+		stateStore = createStateStore(config);
+		try {
+			serverProfiles.load(new File(getDataFolder(), "profiles.yml"));
+		} catch (IOException e) {
+			getLogger().warning("Could not load server profiles: " + e.getMessage());
+		}
+
+		// Show the reconnecting title and action bar message to all waiting players.
+		new StatusBroadcaster(this).schedule();
+
+		schedulePeriodicTasks();
+	}
+
+	@Override
+	public void onDisable() {
+		retryScheduler.shutdown();
+		stateStore.close();
+		if (config.isAdaptive()) {
+			saveServerProfiles();
+		}
+	}
+
+	private void saveServerProfiles() {
+		File file = new File(getDataFolder(), "profiles.yml");
+		try {
+			serverProfiles.save(file);
+		} catch (IOException e) {
+			getLogger().warning("Could not save server profiles to " + file + ": " + e.getMessage());
+		}
 	}
 
 	/**
-	 * Tries to load the config from the config file or creates a default config if the file does not exist.
+	 * Creates the state store of the config. The store is only created once, so changing it requires a proxy restart.
+	 *
+	 * @param config The loaded config.
+	 * @return the ReconnectStateStore, which only lives in memory if the configured one could not be created.
 	 */
-	private void loadConfig() {
+	private ReconnectStateStore createStateStore(ReconnectConfig config) {
+		switch (config.getStateStoreType()) {
+			case "memory":
+				return new MemoryStateStore();
+			case "file":
+				File stateFile = new File(getDataFolder(), "state.dat");
+				try {
+					return new MappedFileStateStore(stateFile, config.getStateStoreCapacity());
+				} catch (IOException e) {
+					getLogger().log(Level.WARNING, "Could not open " + stateFile + ", keeping the reconnect state in memory...", e);
+					return new MemoryStateStore();
+				}
+			default:
+				getLogger().warning("Unknown state store " + config.getStateStoreType() + "! Please check your config! Keeping the reconnect state in memory...");
+				return new MemoryStateStore();
+		}
+	}
+
+	/**
+	 * Reloads the config and replaces the current one. Reconnect tasks pick up the new settings on their next try.
+	 *
+	 * @return true, if the config has been reloaded, false if it could not be loaded and the old one is still used.
+	 */
+	public boolean reloadConfig() {
+		ReconnectConfig loaded;
 		try {
-			if (!getDataFolder().exists() && !getDataFolder().mkdir()) {
-				throw new IOException("Could not create plugin directory!");
+			loaded = loadConfig();
+		} catch (Exception e) {
+			getLogger().log(Level.WARNING, "Could not reload config, keeping the current one...", e);
+			return false;
+		}
+		final ReconnectConfig old = config;
+		config = loaded;
+		schedulePeriodicTasks();
+
+		retryScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				old.release();
 			}
-			File configFile = new File(getDataFolder(), "config.yml");
-			if (configFile.exists()) {
-				Configuration configuration = ConfigurationProvider.getProvider(YamlConfiguration.class).load(configFile);
-				int pluginConfigVersion = ConfigurationProvider.getProvider(YamlConfiguration.class).load(getResourceAsStream("config.yml")).getInt("version");
-				if (configuration.getInt("version") < pluginConfigVersion) {
-					getLogger().info("Found an old config version! Replacing with new one...");
-					File oldConfigFile = new File(getDataFolder(), "config.old.yml");
-					Files.move(configFile, oldConfigFile);
-					getLogger().info("A backup of your old config has been saved to " + oldConfigFile + "!");
-					saveDefaultConfig(configFile);
-					return;
-				}
+		}, RELEASE_DELAY_SECONDS, TimeUnit.SECONDS);
+		return true;
+	}
 
-				reconnectingTitle = configuration.getString("reconnecting-text.title", reconnectingTitle);
-				reconnectingActionBar = configuration.getString("reconnecting-text.actionbar", reconnectingActionBar);
-				connectingTitle = configuration.getString("connecting-text.title", connectingTitle);
-				connectingActionBar = configuration.getString("connecting-text.actionbar", connectingActionBar);
-				failedTitle = configuration.getString("failed-text.title", failedTitle);
-				failedActionBar = configuration.getString("failed-text.actionbar", failedActionBar);
-				maxReconnectTries = Math.max(configuration.getInt("max-reconnect-tries", maxReconnectTries), 1);
-				reconnectMillis = Math.max(configuration.getInt("reconnect-time", reconnectMillis), 0);
-				reconnectTimeout = Math.max(configuration.getInt("reconnect-timeout", reconnectTimeout), 1000);
-				ignoredServers = configuration.getStringList("ignored-servers");
-				String shutdownText = configuration.getString("shutdown.text");
-				if (Strings.isNullOrEmpty(shutdownText)) {
-					shutdownMessage = null;
-					shutdownPattern = null;
-				} else if (!configuration.getBoolean("shutdown.regex")) {
-					shutdownMessage = ChatColor.stripColor(ChatColor.translateAlternateColorCodes('&', shutdownText)); // strip all color codes
-				} else {
-					try {
-						shutdownPattern = Pattern.compile(shutdownText);
-						shutdownMessage = null;
-					} catch (Exception e) {
-						getLogger().warning("Could not compile shutdown regex! Please check your config! Using default shutdown message...");
-					}
-				}
-			} else {
+	/**
+	 * Tries to load the config from the config file or creates a default config if the file does not exist.
+	 *
+	 * @return the loaded config.
+	 * @throws IOException if the config file could not be read or created.
+	 */
+	private ReconnectConfig loadConfig() throws IOException {
+		if (!getDataFolder().exists() && !getDataFolder().mkdir()) {
+			throw new IOException("Could not create plugin directory!");
+		}
+		File configFile = new File(getDataFolder(), "config.yml");
+		if (configFile.exists()) {
+			Configuration configuration = ConfigurationProvider.getProvider(YamlConfiguration.class).load(configFile);
+			int pluginConfigVersion = ConfigurationProvider.getProvider(YamlConfiguration.class).load(getResourceAsStream("config.yml")).getInt("version");
+			if (configuration.getInt("version") < pluginConfigVersion) {
+				getLogger().info("Found an old config version! Replacing with new one...");
+				File oldConfigFile = new File(getDataFolder(), "config.old.yml");
+				Files.move(configFile, oldConfigFile);
+				getLogger().info("A backup of your old config has been saved to " + oldConfigFile + "!");
 				saveDefaultConfig(configFile);
+			} else {
+				return new ReconnectConfig(this, configuration);
 			}
-		} catch (IOException e) {
-			getLogger().warning("Could not load config, using default values...");
-			e.printStackTrace();
+		} else {
+			saveDefaultConfig(configFile);
 		}
+		return new ReconnectConfig(this, new Configuration());
 	}
 
 	private void saveDefaultConfig(File configFile) throws IOException {
@@ -120,6 +256,72 @@ public class Reconnect extends Plugin implements Listener {
 		}
 	}
 
+	/**
+	 * (Re-)schedules all BungeeCord tasks that run at an interval from the current config.
+	 */
+	private synchronized void schedulePeriodicTasks() {
+		for (ScheduledTask task : periodicTasks) {
+			task.cancel();
+		}
+		periodicTasks.clear();
+
+		ReconnectConfig config = this.config;
+
+		// Release the next batch of waiting players of each server periodically.
+		periodicTasks.add(getProxy().getScheduler().schedule(this, new Runnable() {
+			@Override
+			public void run() {
+				for (Map.Entry<BungeeServerInfo, AdmissionQueue> entry : admissionQueues.entrySet()) {
+					entry.getValue().drain(getAdmissionBatchSize(entry.getKey()));
+				}
+				finishPlannedRestarts();
+			}
+		}, config.getAdmissionInterval(), config.getAdmissionInterval(), TimeUnit.MILLISECONDS));
+
+		// Keep the load of all grouped servers up to date.
+		periodicTasks.add(getProxy().getScheduler().schedule(this, new Runnable() {
+			@Override
+			public void run() {
+				ServerGroups serverGroups = Reconnect.this.config.getServerGroups();
+				if (!serverGroups.isEmpty()) {
+					serverGroups.refresh();
+				}
+			}
+		}, 0, config.getServerGroupsRefreshInterval(), TimeUnit.MILLISECONDS));
+
+		// Update the attempts per second.
+		periodicTasks.add(getProxy().getScheduler().schedule(this, new Runnable() {
+			@Override
+			public void run() {
+				metrics.sample();
+			}
+		}, 10, 10, TimeUnit.SECONDS));
+
+		// Save the learned server profiles, so that they aren't lost if the proxy crashes.
+		if (config.isAdaptive()) {
+			periodicTasks.add(getProxy().getScheduler().schedule(this, new Runnable() {
+				@Override
+				public void run() {
+					saveServerProfiles();
+				}
+			}, 1, 1, TimeUnit.MINUTES));
+		}
+
+		if (config.getMetricsDumpInterval() > 0) {
+			final File metricsFile = new File(getDataFolder(), "metrics.prom");
+			periodicTasks.add(getProxy().getScheduler().schedule(this, new Runnable() {
+				@Override
+				public void run() {
+					try {
+						metrics.dump(metricsFile, reconnectTasks.size(), admissionQueues.values());
+					} catch (IOException e) {
+						getLogger().warning("Could not write metrics to " + metricsFile + ": " + e.getMessage());
+					}
+				}
+			}, config.getMetricsDumpInterval(), config.getMetricsDumpInterval(), TimeUnit.SECONDS));
+		}
+	}
+
 	@EventHandler
 	public void onServerSwitch(ServerSwitchEvent event) {
 		// We need to override the Downstream class of each user so that we can override the disconnect methods of it.
@@ -127,34 +329,169 @@ public class Reconnect extends Plugin implements Listener {
 		// instantiate here our own implementation of the DownstreamBridge
 		//
 		// @see net.md_5.bungee.ServerConnector#L249
+		//
+		// Players on ignored servers are never reconnected, so they keep the DownstreamBridge of BungeeCord.
 
-		ProxyServer bungee = getProxy();
 		UserConnection user = (UserConnection) event.getPlayer();
 		ServerConnection server = user.getServer();
-		ChannelWrapper ch = server.getCh();
-
-		ReconnectBridge bridge = new ReconnectBridge(this, bungee, user, server);
-		ch.getHandle().pipeline().get(HandlerBoss.class).setHandler(bridge);
+		if (!config.isIgnored(server.getInfo())) {
+			ChannelWrapper ch = server.getCh();
+			ReconnectBridge bridge = new ReconnectBridge(this, getProxy(), user, server);
+			ch.getHandle().pipeline().get(HandlerBoss.class).setHandler(bridge);
+		}
 
 		// Cancel the reconnect task (if any exist) and clear title and action bar.
-		if (isReconnecting(user.getUniqueId())) {
-			cancelReconnectTask(user.getUniqueId());
+		cancelReconnectTask(user.getUniqueId());
+		stateStore.remove(user.getUniqueId());
+
+		// If the player raced several servers, close the connections to all servers that lost.
+		ConnectRace race = connectRaces.remove(user.getUniqueId());
+		if (race != null) {
+			race.finish(server.getInfo());
+		}
+
+		// Send everything the player said while he was waiting.
+		packetBuffers.replay(user, race != null && race.contains(server.getInfo()));
+	}
+
+	@EventHandler
+	public void onChat(ChatEvent event) {
+		if (event.isCancelled() || !(event.getSender() instanceof ProxiedPlayer)) {
+			return;
+		}
+		ProxiedPlayer player = (ProxiedPlayer) event.getSender();
+		if (!isReconnecting(player.getUniqueId()) && !packetBuffers.isBuffering(player.getUniqueId())) {
+			return;
+		}
+		// Commands of the proxy are executed by BungeeCord itself, so they still work while the player is waiting.
+		if (event.isCommand() && isProxyCommand(event.getMessage())) {
+			return;
+		}
+		if (bufferPacket(player, null, event.getMessage().getBytes(StandardCharsets.UTF_8))) {
+			event.setCancelled(true);
+		}
+	}
+
+	@EventHandler
+	public void onPluginMessage(PluginMessageEvent event) {
+		if (event.isCancelled() || !(event.getSender() instanceof ProxiedPlayer)) {
+			return;
+		}
+		if (bufferPacket((ProxiedPlayer) event.getSender(), event.getTag(), event.getData())) {
+			event.setCancelled(true);
+		}
+	}
+
+	@EventHandler
+	public void onPlayerDisconnect(PlayerDisconnectEvent event) {
+		packetBuffers.discard(event.getPlayer().getUniqueId());
+		ConnectRace race = connectRaces.remove(event.getPlayer().getUniqueId());
+		if (race != null) {
+			race.finish(null);
 		}
 	}
 
 	/**
-	 * Checks whether the current server should be ignored and fires a ServerReconnectEvent afterwards.
+	 * Buffers a packet of a player if he is waiting for a reconnect, since the server it was meant for is gone.
 	 *
-	 * @param user   The User that should be reconnected.
-	 * @param server The Server the User should be reconnected to.
-	 * @return true, if the ignore list does not contain the server and the event hasn't been canceled.
+	 * @return true, if the packet has been buffered and must not be sent to the server.
 	 */
-	public boolean fireServerReconnectEvent(UserConnection user, ServerConnection server) {
-		if (ignoredServers.contains(server.getInfo().getName())) {
-			return false;
+	private boolean bufferPacket(ProxiedPlayer player, String channel, byte[] data) {
+		ReconnectTask task = reconnectTasks.get(player.getUniqueId());
+		return packetBuffers.capture(player.getUniqueId(), task == null ? null : task.getTarget(), channel, data);
+	}
+
+	private boolean isProxyCommand(String message) {
+		int end = message.indexOf(' ');
+		String name = message.substring(1, end < 0 ? message.length() : end).toLowerCase();
+		for (Map.Entry<String, Command> command : getProxy().getPluginManager().getCommands()) {
+			if (command.getKey().equals(name)) {
+				return true;
+			}
 		}
-		ServerReconnectEvent event = getProxy().getPluginManager().callEvent(new ServerReconnectEvent(user, server.getInfo()));
-		return !event.isCancelled();
+		return false;
+	}
+
+	@EventHandler
+	public void onServerConnect(ServerConnectEvent event) {
+		// If the player has been waiting for a server when he left this or another proxy, send him straight back to it
+		// instead of the default server.
+		ProxiedPlayer player = event.getPlayer();
+		if (player.getServer() != null) {
+			return;
+		}
+		ReconnectState state = stateStore.get(player.getUniqueId());
+		if (state == null) {
+			return;
+		}
+		ServerInfo server = getProxy().getServerInfo(state.getServer());
+		if (server != null && !config.isIgnored(server)) {
+			event.setTarget(server);
+		}
+	}
+
+	/**
+	 * Checks whether the current server should be ignored and fires a ServerReconnectEvent afterwards. Since listeners
+	 * may complete the event asynchronously, the result is passed to a Callback, which is always called on the EventLoop
+	 * of the User, so that his reconnect task is never started from a thread of another plugin.
+	 *
+	 * @param user     The User that should be reconnected.
+	 * @param server   The Server the User should be reconnected to.
+	 * @param callback The Callback that is called with the event once all listeners are done. The event is canceled if
+	 *                 the ignore list contains the server or a listener canceled it.
+	 */
+	public void fireServerReconnectEvent(UserConnection user, ServerConnection server, final Callback<ServerReconnectEvent> callback) {
+		final EventLoop eventLoop = user.getCh().getHandle().eventLoop();
+		Callback<ServerReconnectEvent> done = new Callback<ServerReconnectEvent>() {
+			@Override
+			public void done(final ServerReconnectEvent result, final Throwable error) {
+				if (eventLoop.inEventLoop()) {
+					callback.done(result, error);
+				} else {
+					eventLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							callback.done(result, error);
+						}
+					});
+				}
+			}
+		};
+		ServerReconnectEvent event = new ServerReconnectEvent(user, server.getInfo(), done);
+		if (config.isIgnored(server.getInfo())) {
+			event.setCancelled(true);
+			done.done(event, null);
+			return;
+		}
+		getProxy().getPluginManager().callEvent(event);
+	}
+
+	/**
+	 * Gets the server a User should be sent to if he can't be reconnected to a server. This is the least-loaded member of
+	 * the server's group or the fallback server of the User's listener, if the server isn't in a group.
+	 *
+	 * @param user   The User that should be moved.
+	 * @param failed The Server that isn't available.
+	 * @return the server the User should be sent to.
+	 */
+	public ServerInfo getFallbackServer(UserConnection user, ServerInfo failed) {
+		ServerInfo server = config.getServerGroups().select(failed);
+		if (server == null) {
+			server = getProxy().getServerInfo(user.getPendingConnection().getListener().getFallbackServer());
+		}
+		return server;
+	}
+
+	/**
+	 * Sends a User to another server, e.g. the one returned by {@link #getFallbackServer(UserConnection, ServerInfo)}, and
+	 * counts him towards the load of that server until its group is refreshed.
+	 *
+	 * @param user   The User that should be moved.
+	 * @param server The server the User should be sent to.
+	 */
+	public void connectToServer(UserConnection user, ServerInfo server) {
+		config.getServerGroups().assign(server);
+		user.connectNow(server);
 	}
 
 	/**
@@ -172,12 +509,41 @@ public class Reconnect extends Plugin implements Listener {
 	 * will be canceled.
 	 *
 	 * @param user   The User that should be reconnected.
-	 * @param server The Server the User should be connected to.
+	 * @param server The Server connection the User has lost.
+	 * @param event  The ServerReconnectEvent that decided the target, delay and priority of the reconnect.
 	 */
-	public void reconnectIfOnline(UserConnection user, ServerConnection server) {
+	public void reconnectIfOnline(UserConnection user, ServerConnection server, ServerReconnectEvent event) {
+		reconnectIfOnline(user, server, event, getReconnectDeadline(event.getTarget()));
+	}
+
+	/**
+	 * Reconnects a User to a Server because he has been kicked with a message of the specified KickClass, as long as
+	 * the user is currently online.
+	 *
+	 * @param user      The User that should be reconnected.
+	 * @param server    The Server connection the User has lost.
+	 * @param kickClass The KickClass of the kick message, which may override the reconnect deadline.
+	 * @param event     The ServerReconnectEvent that decided the target, delay and priority of the reconnect.
+	 */
+	public void reconnectIfOnline(UserConnection user, ServerConnection server, KickClass kickClass, ServerReconnectEvent event) {
+		reconnectIfOnline(user, server, event, kickClass.getDeadline() < 0 ? getReconnectDeadline(event.getTarget()) : kickClass.getDeadline());
+	}
+
+	private void reconnectIfOnline(UserConnection user, ServerConnection server, ServerReconnectEvent event, long deadline) {
 		if (isUserOnline(user)) {
-			if (!isReconnecting(user.getUniqueId())) {
-				reconnect(user, server);
+			int priority = event.getPriority();
+			PlannedRestart restart = getPlannedRestart(server.getInfo());
+			if (restart != null) {
+				// The server has been announced to restart, so the player waits as long as the restart may take.
+				deadline = restart.getDeadline();
+				if (restart.hasPriority(user)) {
+					priority++;
+				}
+			}
+			reconnect(user, server, resolveTarget(server, event.getTarget()), deadline, event.getDelay(), priority);
+			if (restart != null) {
+				// Only now that the task is registered, since a started restart is finished as soon as nobody waits for it.
+				restart.markStarted();
 			}
 		} else {
 			cancelReconnectTask(user.getUniqueId());
@@ -185,29 +551,243 @@ public class Reconnect extends Plugin implements Listener {
 	}
 
 	/**
-	 * Reconnects the User without checking whether he's online or not.
+	 * Resolves the target of a ServerReconnectEvent. Listeners may set any ServerInfo implementation as target, but only
+	 * the servers BungeeCord knows can be connected to, so other implementations are looked up by their name.
 	 *
-	 * @param user   The User that should be reconnected.
-	 * @param server The Server the User should be connected to.
+	 * @param server The Server connection the User has lost.
+	 * @param target The target of the event.
+	 * @return the BungeeServerInfo of the target, or the server the User has lost if the target is unknown.
 	 */
-	private void reconnect(UserConnection user, ServerConnection server) {
-		ReconnectTask reconnectTask = reconnectTasks.get(user.getUniqueId());
-		if (reconnectTask == null) {
-			reconnectTasks.put(user.getUniqueId(), reconnectTask = new ReconnectTask(this, getProxy(), user, server));
+	private BungeeServerInfo resolveTarget(ServerConnection server, ServerInfo target) {
+		if (target instanceof BungeeServerInfo) {
+			return (BungeeServerInfo) target;
+		}
+		ServerInfo resolved = getProxy().getServerInfo(target.getName());
+		if (resolved instanceof BungeeServerInfo) {
+			return (BungeeServerInfo) resolved;
+		}
+		getLogger().warning("Unknown reconnect target " + target.getName() + "! Reconnecting to " + server.getInfo().getName() + " instead...");
+		return server.getInfo();
+	}
+
+	/**
+	 * Reconnects the User without checking whether he's online or not. If the User already has got a reconnect task,
+	 * nothing happens.
+	 *
+	 * @param user     The User that should be reconnected.
+	 * @param server   The Server connection the User has lost.
+	 * @param target   The Server the User should be connected to.
+	 * @param deadline The reconnect deadline in milliseconds or 0, if the max-reconnect-tries should be used.
+	 * @param delay    The amount of milliseconds before the first reconnect try.
+	 * @param priority The priority of the User in the admission queue.
+	 */
+	private void reconnect(UserConnection user, ServerConnection server, BungeeServerInfo target, long deadline, long delay, int priority) {
+		ReconnectTask reconnectTask = new ReconnectTask(this, getProxy(), user, server, target, deadline, priority);
+		if (reconnectTasks.register(user.getUniqueId(), reconnectTask)) {
+			metrics.recordTask();
+			// Remember the server, so that the player is routed back to it if he leaves or the proxy restarts.
+			stateStore.put(user.getUniqueId(), new ReconnectState(target.getName(), reconnectTask.getStartTime(), reconnectTask.getStartTime() + config.getStateTtl()));
+			// Keep the player in an empty world instead of the world of the dead server while he is waiting.
+			if (config.isLimbo() && Limbo.isSupported(user)) {
+				Limbo.send(user);
+			}
+			reconnectTask.start(delay);
 		}
-		reconnectTask.tryReconnect();
 	}
 
 	/**
-	 * Removes a reconnect task from the main HashMap
+	 * Removes the reconnect task of a User from the registry, no matter which task it is.
 	 *
 	 * @param uuid The UniqueId of the User.
 	 */
 	void cancelReconnectTask(UUID uuid) {
 		ReconnectTask task = reconnectTasks.remove(uuid);
-		if (task != null && getProxy().getPlayer(uuid) != null) {
-			task.cancel();
+		if (task != null) {
+			releaseReconnectTask(task);
+		}
+	}
+
+	/**
+	 * Removes a reconnect task from the registry, but only if it is still the current task of its User. This way, a
+	 * finished task can't accidentally remove a new task of the same User.
+	 *
+	 * @param task The ReconnectTask that should be removed.
+	 */
+	void cancelReconnectTask(ReconnectTask task) {
+		if (reconnectTasks.remove(task.getUser().getUniqueId(), task)) {
+			releaseReconnectTask(task);
+		}
+	}
+
+	private void releaseReconnectTask(ReconnectTask task) {
+		UUID uuid = task.getUser().getUniqueId();
+		task.markCanceled();
+		getProber(task.getTarget()).unsubscribe(uuid);
+		getAdmissionQueue(task.getTarget()).remove(task);
+		getCircuitBreaker(task.getTarget()).release(task);
+		// Clears the title and action bar, if the User is still online.
+		task.cancel();
+	}
+
+	/**
+	 * Gets the availability prober of a server or creates a new one, if there is none yet.
+	 *
+	 * @param server The Server that should be probed.
+	 * @return the ServerProber that is shared by all players waiting for that server.
+	 */
+	ServerProber getProber(BungeeServerInfo server) {
+		ServerProber prober = probers.get(server);
+		if (prober == null) {
+			ServerProber created = new ServerProber(this, server);
+			prober = probers.putIfAbsent(server, created);
+			if (prober == null) {
+				prober = created;
+			}
 		}
+		return prober;
+	}
+
+	/**
+	 * Gets the circuit breaker of a server or creates a new one, if there is none yet.
+	 *
+	 * @param server The Server players are waiting for.
+	 * @return the CircuitBreaker that is shared by all players waiting for that server.
+	 */
+	CircuitBreaker getCircuitBreaker(BungeeServerInfo server) {
+		CircuitBreaker breaker = circuitBreakers.get(server);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(this, server);
+			breaker = circuitBreakers.putIfAbsent(server, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * Gets the admission queue of a server or creates a new one, if there is none yet.
+	 *
+	 * @param server The Server players are waiting for.
+	 * @return the AdmissionQueue that is shared by all players waiting for that server.
+	 */
+	AdmissionQueue getAdmissionQueue(BungeeServerInfo server) {
+		AdmissionQueue queue = admissionQueues.get(server);
+		if (queue == null) {
+			AdmissionQueue created = new AdmissionQueue(this, server);
+			queue = admissionQueues.putIfAbsent(server, created);
+			if (queue == null) {
+				queue = created;
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * @return the admission queues of all servers players have been waiting for.
+	 */
+	Collection<AdmissionQueue> getAdmissionQueues() {
+		return admissionQueues.values();
+	}
+
+	/**
+	 * Announces that a server is about to restart. Until it is back, all players that lose the connection to it are
+	 * reconnected without looking at the kick message, and once it is back they are released in the batches of the
+	 * planned-restart block of the config. Everything the reconnect tasks of the server need, and the priority of each
+	 * of its players, is prepared right now instead of when all players are kicked at the same time.
+	 *
+	 * @param server The server that is about to restart. Other ServerInfo implementations are looked up by their name.
+	 * @return the PlannedRestart, which replaces a previous one of the same server.
+	 * @throws IllegalArgumentException if BungeeCord doesn't know the server.
+	 */
+	public PlannedRestart planRestart(ServerInfo server) {
+		BungeeServerInfo target;
+		if (server instanceof BungeeServerInfo) {
+			target = (BungeeServerInfo) server;
+		} else {
+			ServerInfo resolved = getProxy().getServerInfo(server.getName());
+			if (!(resolved instanceof BungeeServerInfo)) {
+				throw new IllegalArgumentException("Unknown server " + server.getName() + "!");
+			}
+			target = (BungeeServerInfo) resolved;
+		}
+		ReconnectConfig config = this.config;
+		PlannedRestart restart = new PlannedRestart(target, config.getPlannedRestartDeadline(), config.getPlannedRestartBatchSize(), config.getPlannedRestartPriorityPermission());
+		plannedRestarts.put(target.getName(), restart);
+
+		getProber(target);
+		getAdmissionQueue(target);
+		config.getConnectTemplate(target);
+		getCircuitBreaker(target);
+
+		BaseComponent[] message = config.getPlannedRestartMessage().isEmpty() ? null : TextComponent.fromLegacyText(config.getPlannedRestartMessage());
+		for (ProxiedPlayer player : target.getPlayers()) {
+			restart.prepare(player);
+			if (message != null) {
+				player.sendMessage(message);
+			}
+		}
+		getLogger().info("Planned restart of " + target.getName() + " with " + target.getPlayers().size() + " players");
+		return restart;
+	}
+
+	/**
+	 * Cancels the planned restart of a server. Players that are already waiting for it are still reconnected.
+	 *
+	 * @param server The server that won't restart.
+	 * @return true, if a restart of the server had been planned.
+	 */
+	public boolean cancelPlannedRestart(ServerInfo server) {
+		return plannedRestarts.remove(server.getName()) != null;
+	}
+
+	/**
+	 * @param server The Server that should be checked.
+	 * @return the planned restart of the server, or null if no restart has been announced.
+	 */
+	public PlannedRestart getPlannedRestart(ServerInfo server) {
+		return plannedRestarts.get(server.getName());
+	}
+
+	/**
+	 * @param server The Server players are waiting for.
+	 * @return the amount of players that should be released per batch once the server is back.
+	 */
+	int getAdmissionBatchSize(ServerInfo server) {
+		PlannedRestart restart = getPlannedRestart(server);
+		return restart != null && restart.isStarted() ? restart.getBatchSize() : config.getAdmissionBatchSize();
+	}
+
+	/**
+	 * Removes all planned restarts that either have finished, since nobody is waiting for the server anymore, or didn't
+	 * start within their deadline.
+	 */
+	private void finishPlannedRestarts() {
+		for (PlannedRestart restart : plannedRestarts.values()) {
+			if (restart.isExpired()) {
+				plannedRestarts.remove(restart.getServer().getName(), restart);
+				getLogger().info("Planned restart of " + restart.getServer().getName() + " didn't start in time, removing it...");
+			} else if (restart.isStarted() && !hasWaitingPlayers(restart.getServer())) {
+				plannedRestarts.remove(restart.getServer().getName(), restart);
+				getLogger().info("Planned restart of " + restart.getServer().getName() + " has finished");
+			}
+		}
+	}
+
+	private boolean hasWaitingPlayers(ServerInfo server) {
+		for (ReconnectTask task : reconnectTasks.getTasks()) {
+			if (task.getTarget() == server) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return all reconnect tasks that are currently registered.
+	 */
+	Collection<ReconnectTask> getReconnectTasks() {
+		return reconnectTasks.getTasks();
 	}
 
 	/**
@@ -217,51 +797,86 @@ public class Reconnect extends Plugin implements Listener {
 	 * @return true, if there is a task that tries to reconnect the User to a server.
 	 */
 	public boolean isReconnecting(UUID uuid) {
-		return reconnectTasks.containsKey(uuid);
+		return reconnectTasks.contains(uuid);
 	}
 
-	public String getReconnectingTitle() {
-		return ChatColor.translateAlternateColorCodes('&', reconnectingTitle);
+	void registerConnectRace(UUID uuid, ConnectRace race) {
+		connectRaces.put(uuid, race);
 	}
-	
-	public String getReconnectingActionBar() {
-		return ChatColor.translateAlternateColorCodes('&', reconnectingActionBar);
+
+	void removeConnectRace(UUID uuid, ConnectRace race) {
+		connectRaces.remove(uuid, race);
 	}
 
-	public String getConnectingTitle() {
-		return ChatColor.translateAlternateColorCodes('&', connectingTitle);
+	public PacketBufferManager getPacketBuffers() {
+		return packetBuffers;
 	}
-	
-	public String getConnectingActionBar() {
-		return ChatColor.translateAlternateColorCodes('&', connectingActionBar);
+
+	/**
+	 * @param server The server the player should be reconnected to.
+	 * @return the amount of milliseconds the server usually needs to restart, or the configured deadline if it hasn't
+	 * been learned yet.
+	 */
+	private long getReconnectDeadline(ServerInfo server) {
+		ReconnectConfig config = this.config;
+		if (config.isAdaptive()) {
+			long deadline = serverProfiles.get(server).getDeadline(config.getAdaptiveMinSamples(), config.getAdaptiveMinDeadline(), config.getAdaptiveMaxDeadline());
+			if (deadline > 0) {
+				return deadline;
+			}
+		}
+		return config.getReconnectDeadline();
 	}
-	
-	public String getFailedTitle() {
-		return ChatColor.translateAlternateColorCodes('&', failedTitle);
+
+	/**
+	 * @param server The server the player should be connected to.
+	 * @return the amount of milliseconds a connection to the server may take.
+	 */
+	int getConnectTimeout(ServerInfo server) {
+		ReconnectConfig config = this.config;
+		if (config.isAdaptive()) {
+			return serverProfiles.get(server).getConnectTimeout(config.getAdaptiveMinSamples(), config.getReconnectTimeout());
+		}
+		return config.getReconnectTimeout();
 	}
-	
-	public String getFailedActionBar() {
-		return ChatColor.translateAlternateColorCodes('&', failedActionBar);
+
+	public ServerProfiles getServerProfiles() {
+		return serverProfiles;
 	}
 
-	public int getMaxReconnectTries() {
-		return maxReconnectTries;
+	public ReconnectMetrics getMetrics() {
+		return metrics;
 	}
 
-	public int getReconnectMillis() {
-		return reconnectMillis;
+	/**
+	 * @return the current config. Read it once per operation, so that all settings are from the same snapshot.
+	 */
+	public ReconnectConfig getConfig() {
+		return config;
 	}
 
-	public int getReconnectTimeout() {
-		return reconnectTimeout;
+	/**
+	 * @return the store of the reconnect state of all players.
+	 */
+	public ReconnectStateStore getStateStore() {
+		return stateStore;
 	}
 
-	public String getShutdownMessage() {
-		return shutdownMessage;
+	/**
+	 * Replaces the state store, e.g. by one that shares the state with other proxies. The old store is closed.
+	 *
+	 * @param stateStore The new ReconnectStateStore.
+	 */
+	public void setStateStore(ReconnectStateStore stateStore) {
+		ReconnectStateStore old = this.stateStore;
+		this.stateStore = stateStore;
+		if (old != null) {
+			old.close();
+		}
 	}
 
-	public Pattern getShutdownPattern() {
-		return shutdownPattern;
+	public RetryScheduler getRetryScheduler() {
+		return retryScheduler;
 	}
 
 }
@@ -0,0 +1,92 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.util.Histogram;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.CommandSender;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.plugin.Command;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The /reconnect command for server administrators.
+ */
+public class ReconnectCommand extends Command {
+
+	private final Reconnect instance;
+
+	public ReconnectCommand(Reconnect instance) {
+		super("reconnect", "reconnect.admin");
+		this.instance = instance;
+	}
+
+	@Override
+	public void execute(CommandSender sender, String[] args) {
+		if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+			sendStats(sender);
+		} else if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+			if (instance.reloadConfig()) {
+				send(sender, ChatColor.GREEN + "The config has been reloaded.");
+			} else {
+				send(sender, ChatColor.RED + "Could not reload the config! Please check the console for details.");
+			}
+		} else if ((args.length == 2 || args.length == 3 && args[2].equalsIgnoreCase("cancel")) && args[0].equalsIgnoreCase("restart")) {
+			ServerInfo server = instance.getProxy().getServerInfo(args[1]);
+			if (server == null) {
+				send(sender, ChatColor.RED + "Unknown server " + args[1] + "!");
+			} else if (args.length == 3) {
+				if (instance.cancelPlannedRestart(server)) {
+					send(sender, ChatColor.GREEN + "The planned restart of " + server.getName() + " has been canceled.");
+				} else {
+					send(sender, ChatColor.RED + "There is no planned restart of " + server.getName() + "!");
+				}
+			} else {
+				PlannedRestart restart = instance.planRestart(server);
+				send(sender, ChatColor.GREEN + "Players of " + server.getName() + " will wait up to " + restart.getDeadline() / 1000 + " seconds for the restart.");
+			}
+		} else {
+			send(sender, ChatColor.RED + "Usage: /reconnect <stats|reload|restart <server> [cancel]>");
+		}
+	}
+
+	private void sendStats(CommandSender sender) {
+		ReconnectMetrics metrics = instance.getMetrics();
+		long givenUp = metrics.getFallbacks() + metrics.getDisconnects();
+
+		send(sender, ChatColor.GOLD + "Reconnect statistics:");
+		send(sender, ChatColor.GRAY + "Waiting players: " + ChatColor.WHITE + instance.getReconnectTasks().size());
+		send(sender, ChatColor.GRAY + "Reconnect tasks: " + ChatColor.WHITE + metrics.getTasks() + ChatColor.GRAY + " (tries: " + metrics.getTries() + ")");
+		send(sender, ChatColor.GRAY + "Logins: " + ChatColor.WHITE + metrics.getAttempts() + ChatColor.GRAY + " (" + format(metrics.getAttemptsPerSecond()) + "/s, "
+				+ metrics.getSuccesses() + " succeeded, " + metrics.getFailures() + " failed)");
+		for (Map.Entry<String, AtomicLong> entry : metrics.getFailureCauses().entrySet()) {
+			send(sender, ChatColor.GRAY + " - " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue().get());
+		}
+		send(sender, ChatColor.GRAY + "Given up: " + ChatColor.WHITE + givenUp + ChatColor.GRAY + " (" + metrics.getFallbacks() + " fallbacks, "
+				+ metrics.getDisconnects() + " disconnects, fallback rate " + format(metrics.getTasks() == 0 ? 0 : metrics.getFallbacks() * 100.0 / metrics.getTasks()) + "%)");
+		send(sender, ChatColor.GRAY + "Login latency: " + formatHistogram(metrics.getConnectLatency()));
+		send(sender, ChatColor.GRAY + "Time to reconnect: " + formatHistogram(metrics.getTimeToReconnect()));
+		send(sender, ChatColor.GRAY + "Time to give up: " + formatHistogram(metrics.getTimeToGiveUp()));
+		send(sender, ChatColor.GRAY + "Admission queue drain time: " + formatHistogram(metrics.getDrainTime()));
+		for (AdmissionQueue queue : instance.getAdmissionQueues()) {
+			send(sender, ChatColor.GRAY + " - " + queue.getTarget().getName() + ": " + ChatColor.WHITE + queue.getDepth() + ChatColor.GRAY + " waiting (max. depth "
+					+ queue.getMaxDepth() + ", last drain " + queue.getLastDrainMillis() + "ms)");
+		}
+		send(sender, ChatColor.GRAY + "Buffered packets: " + ChatColor.WHITE + instance.getPacketBuffers().getTotalBytes() + " bytes");
+	}
+
+	private static String formatHistogram(Histogram histogram) {
+		return ChatColor.WHITE + "p50 " + histogram.getPercentile(0.5) + "ms, p90 " + histogram.getPercentile(0.9) + "ms, p99 "
+				+ histogram.getPercentile(0.99) + "ms, max " + histogram.getMax() + "ms" + ChatColor.GRAY + " (" + histogram.getCount() + " samples)";
+	}
+
+	private static String format(double value) {
+		return String.format("%.1f", value);
+	}
+
+	private static void send(CommandSender sender, String message) {
+		sender.sendMessage(TextComponent.fromLegacyText(message));
+	}
+
+}
@@ -0,0 +1,437 @@
+package eu.the5zig.reconnect;
+
+import com.google.common.base.Strings;
+import eu.the5zig.reconnect.KickClassifier.Action;
+import eu.the5zig.reconnect.KickClassifier.KickClass;
+import eu.the5zig.reconnect.KickClassifier.MatchType;
+import eu.the5zig.reconnect.net.ConnectTemplate;
+import eu.the5zig.reconnect.retry.DecorrelatedJitterRetryPolicy;
+import eu.the5zig.reconnect.retry.ExponentialRetryPolicy;
+import eu.the5zig.reconnect.retry.FixedRetryPolicy;
+import eu.the5zig.reconnect.retry.RetryPolicy;
+import eu.the5zig.reconnect.util.MessageTemplate;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.config.Configuration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable snapshot of the config.<br>
+ * The plugin keeps the current snapshot in a single volatile field, which is replaced as a whole when the config is
+ * reloaded. Code that needs several settings should read the snapshot once and use it for the whole operation, so
+ * that it never sees a mix of old and new settings.
+ */
+public class ReconnectConfig {
+
+	private final MessageTemplate reconnectingTitle;
+	private final MessageTemplate reconnectingActionBar;
+	private final MessageTemplate connectingTitle;
+	private final MessageTemplate connectingActionBar;
+	private final MessageTemplate failedTitle;
+	private final MessageTemplate failedActionBar;
+	private final int maxReconnectTries;
+	private final int reconnectMillis;
+	private final int reconnectTimeout;
+	private final boolean adaptive;
+	private final int adaptiveMinSamples;
+	private final long adaptiveMinDeadline;
+	private final long adaptiveMaxDeadline;
+	private final int maxRetryDelay;
+	private final int uiRefreshMillis;
+	private final boolean limbo;
+	private final RetryPolicy retryPolicy;
+	private final long reconnectDeadline;
+	private final int admissionBatchSize;
+	private final int admissionInterval;
+	private final int metricsDumpInterval;
+	private final String readinessMarker;
+	private final int serverGroupsRefreshInterval;
+	private final ServerGroups serverGroups;
+	private final int raceWidth;
+	private final long plannedRestartDeadline;
+	private final int plannedRestartBatchSize;
+	private final String plannedRestartPriorityPermission;
+	private final String plannedRestartMessage;
+	private final String stateStoreType;
+	private final int stateStoreCapacity;
+	private final long stateTtl;
+	private final int circuitBreakerThreshold;
+	private final long circuitBreakerOpenTime;
+	private final long circuitBreakerDownTime;
+	private final boolean bufferEnabled;
+	private final int bufferMaxPackets;
+	private final int bufferMaxBytes;
+	private final long bufferMaxTotalBytes;
+	/**
+	 * The servers of the ignore list, resolved once so that no name has to be looked up on a server switch or kick.
+	 */
+	private final Set<ServerInfo> ignoredServers;
+	private final KickClassifier kickClassifier;
+
+	private final Reconnect instance;
+
+	/**
+	 * The pre-configured Bootstrap of each server players have been reconnected to. They are created lazily per
+	 * snapshot, so that a reload resolves the addresses of the servers again.
+	 */
+	private final ConcurrentHashMap<BungeeServerInfo, ConnectTemplate> connectTemplates = new ConcurrentHashMap<>();
+
+	/**
+	 * Parses a config. Missing values are replaced by their defaults and invalid values are clamped.
+	 *
+	 * @param instance      The plugin instance.
+	 * @param configuration The loaded config.yml, or an empty Configuration to use the defaults.
+	 */
+	public ReconnectConfig(Reconnect instance, Configuration configuration) {
+		this.instance = instance;
+
+		maxReconnectTries = Math.max(configuration.getInt("max-reconnect-tries", 20), 1);
+		reconnectMillis = Math.max(configuration.getInt("reconnect-time", 1000), 0);
+		reconnectTimeout = Math.max(configuration.getInt("reconnect-timeout", 5000), 1000);
+		adaptive = configuration.getBoolean("adaptive.enabled", false);
+		adaptiveMinSamples = Math.max(configuration.getInt("adaptive.min-samples", 3), 1);
+		adaptiveMinDeadline = Math.max(configuration.getLong("adaptive.min-deadline", 10000), 1000);
+		adaptiveMaxDeadline = Math.max(configuration.getLong("adaptive.max-deadline", 600000), adaptiveMinDeadline);
+		uiRefreshMillis = Math.max(configuration.getInt("ui-refresh-time", 500), 100);
+		limbo = configuration.getBoolean("limbo", false);
+		maxRetryDelay = Math.max(configuration.getInt("retry.max-delay", 10000), reconnectMillis);
+		retryPolicy = createRetryPolicy(configuration.getString("retry.policy", "fixed"));
+		reconnectDeadline = Math.max(configuration.getLong("retry.deadline", 0), 0);
+		admissionBatchSize = Math.max(configuration.getInt("admission.batch-size", 20), 0);
+		admissionInterval = Math.max(configuration.getInt("admission.interval", 500), 50);
+		ignoredServers = loadIgnoredServers(configuration);
+		kickClassifier = loadKickClassifier(configuration);
+		readinessMarker = ChatColor.stripColor(ChatColor.translateAlternateColorCodes('&', configuration.getString("readiness.motd-marker", "")));
+		serverGroupsRefreshInterval = Math.max(configuration.getInt("server-groups.refresh-interval", 5000), 1000);
+		serverGroups = loadServerGroups(configuration);
+		raceWidth = Math.max(configuration.getInt("server-groups.race-width", 3), 2);
+		metricsDumpInterval = Math.max(configuration.getInt("metrics.dump-interval", 0), 0);
+		stateStoreType = configuration.getString("state-store.type", "memory").toLowerCase();
+		stateStoreCapacity = Math.max(configuration.getInt("state-store.capacity", 8192), 64);
+		stateTtl = Math.max(configuration.getLong("state-store.ttl", 300000), 0);
+		circuitBreakerThreshold = Math.max(configuration.getInt("circuit-breaker.failure-threshold", 0), 0);
+		circuitBreakerOpenTime = Math.max(configuration.getLong("circuit-breaker.open-time", 60000), 1000);
+		circuitBreakerDownTime = Math.max(configuration.getLong("circuit-breaker.down-time", 0), 0);
+		bufferEnabled = configuration.getBoolean("buffer.enabled", true);
+		bufferMaxPackets = Math.max(configuration.getInt("buffer.max-packets", 32), 1);
+		bufferMaxBytes = Math.max(configuration.getInt("buffer.max-bytes", 8192), 256);
+		bufferMaxTotalBytes = Math.max(configuration.getLong("buffer.max-total-bytes", 8388608), bufferMaxBytes);
+		plannedRestartDeadline = Math.max(configuration.getLong("planned-restart.deadline", 300000), 1000);
+		plannedRestartBatchSize = Math.max(configuration.getInt("planned-restart.batch-size", 10), 1);
+		plannedRestartPriorityPermission = configuration.getString("planned-restart.priority-permission", "reconnect.priority");
+		plannedRestartMessage = ChatColor.translateAlternateColorCodes('&', configuration.getString("planned-restart.message", "&eThis server is restarting soon. You will be reconnected automatically."));
+
+		// Compile all messages, so that they don't have to be translated and serialized each time they are sent.
+		// The reconnecting title stays until the next frame of the animation is shown, even if it is a bit late.
+		int reconnectingStay = (uiRefreshMillis + 1000) / 1000 * 20;
+		reconnectingTitle = MessageTemplate.compile(configuration.getString("reconnecting-text.title", "&7Reconnecting{%dots%}"), 0, reconnectingStay, 0);
+		reconnectingActionBar = MessageTemplate.compile(configuration.getString("reconnecting-text.actionbar", "&a&lPlease do not leave! &7Reconnecting to server{%dots%}"), 0, 0, 0);
+		connectingTitle = MessageTemplate.compile(configuration.getString("connecting-text.title", "&aConnecting.."), 10, 20, 10);
+		connectingActionBar = MessageTemplate.compile(configuration.getString("connecting-text.actionbar", "&7Connecting you to the server.."), 0, 0, 0);
+		failedTitle = MessageTemplate.compile(configuration.getString("failed-text.title", "&cReconnecting failed!"), 10, 80, 10);
+		failedActionBar = MessageTemplate.compile(configuration.getString("failed-text.actionbar", "&eYou have been moved to the fallback server!"), 0, 0, 0);
+	}
+
+	/**
+	 * Creates the retry policy with the specified name. The reconnect-time is used as base delay.
+	 *
+	 * @param name The name of the policy, as used in the config.
+	 * @return the RetryPolicy, or a fixed one if the name is unknown.
+	 */
+	private RetryPolicy createRetryPolicy(String name) {
+		switch (name.toLowerCase()) {
+			case "fixed":
+				return new FixedRetryPolicy(reconnectMillis);
+			case "exponential":
+				return new ExponentialRetryPolicy(reconnectMillis, maxRetryDelay);
+			case "decorrelated-jitter":
+				return new DecorrelatedJitterRetryPolicy(reconnectMillis, maxRetryDelay);
+			default:
+				instance.getLogger().warning("Unknown retry policy " + name + "! Please check your config! Using fixed reconnect-time...");
+				return new FixedRetryPolicy(reconnectMillis);
+		}
+	}
+
+	/**
+	 * Compiles the shutdown block and all additional kick reasons of the config into a KickClassifier.
+	 *
+	 * @param configuration The loaded config.
+	 * @return the KickClassifier that decides what happens to kicked players.
+	 */
+	private KickClassifier loadKickClassifier(Configuration configuration) {
+		String shutdownText = configuration.getString("shutdown.text", "Server closed");
+		KickClass shutdown = new KickClass("shutdown", Action.RECONNECT, -1);
+		KickClassifier classifier;
+		if (Strings.isNullOrEmpty(shutdownText)) {
+			// Always reconnect the players, no matter what the actual kick-reason was.
+			classifier = new KickClassifier(shutdown);
+		} else {
+			classifier = new KickClassifier(new KickClass("default", Action.DISCONNECT, -1));
+			if (!configuration.getBoolean("shutdown.regex")) {
+				classifier.addRule(MatchType.LITERAL, shutdownText, shutdown);
+			} else {
+				try {
+					classifier.addRule(MatchType.REGEX, shutdownText, shutdown);
+				} catch (Exception e) {
+					instance.getLogger().warning("Could not compile shutdown regex! Please check your config! Using default shutdown message...");
+					classifier.addRule(MatchType.LITERAL, "Server closed", shutdown);
+				}
+			}
+		}
+
+		Configuration reasons = configuration.getSection("kick-reasons");
+		for (String name : reasons.getKeys()) {
+			Configuration reason = reasons.getSection(name);
+			try {
+				MatchType type = MatchType.valueOf(reason.getString("match", "literal").toUpperCase());
+				Action action = Action.valueOf(reason.getString("action", "reconnect").toUpperCase());
+				KickClass kickClass = new KickClass(name, action, reason.getLong("deadline", -1));
+				classifier.addRule(type, reason.getString("text", ""), kickClass);
+			} catch (Exception e) {
+				instance.getLogger().warning("Could not load kick reason " + name + "! Please check your config! Ignoring it...");
+			}
+		}
+		return classifier;
+	}
+
+	/**
+	 * Resolves the names of the ignored servers of the config.
+	 *
+	 * @param configuration The loaded config.
+	 * @return the servers whose players should never be reconnected.
+	 */
+	private Set<ServerInfo> loadIgnoredServers(Configuration configuration) {
+		Set<ServerInfo> servers = new HashSet<>();
+		for (String name : configuration.getStringList("ignored-servers")) {
+			ServerInfo server = instance.getProxy().getServerInfo(name);
+			if (server != null) {
+				servers.add(server);
+			} else {
+				instance.getLogger().warning("Unknown ignored server " + name + "! Please check your config! Ignoring it...");
+			}
+		}
+		return Collections.unmodifiableSet(servers);
+	}
+
+	/**
+	 * Loads the server groups of the config.
+	 *
+	 * @param configuration The loaded config.
+	 * @return the ServerGroups, which are empty if no groups are configured.
+	 */
+	private ServerGroups loadServerGroups(Configuration configuration) {
+		Configuration section = configuration.getSection("server-groups.groups");
+		Map<String, List<String>> groups = new HashMap<>();
+		for (String name : section.getKeys()) {
+			groups.put(name, section.getStringList(name));
+		}
+		return new ServerGroups(instance, groups, new HashSet<>(configuration.getStringList("server-groups.race")));
+	}
+
+	/**
+	 * Gets the pre-configured Bootstrap of a server or creates a new one, if there is none yet.
+	 *
+	 * @param server The Server that should be connected to.
+	 * @return the ConnectTemplate that is shared by all connections to that server.
+	 */
+	public ConnectTemplate getConnectTemplate(BungeeServerInfo server) {
+		ConnectTemplate template = connectTemplates.get(server);
+		if (template == null) {
+			ConnectTemplate created = new ConnectTemplate(instance.getProxy(), server);
+			template = connectTemplates.putIfAbsent(server, created);
+			if (template == null) {
+				template = created;
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Releases the encoded packets of all messages. This snapshot must not be used to send messages anymore afterwards.
+	 */
+	public void release() {
+		reconnectingTitle.release();
+		reconnectingActionBar.release();
+		connectingTitle.release();
+		connectingActionBar.release();
+		failedTitle.release();
+		failedActionBar.release();
+	}
+
+	public MessageTemplate getReconnectingTitle() {
+		return reconnectingTitle;
+	}
+
+	public MessageTemplate getReconnectingActionBar() {
+		return reconnectingActionBar;
+	}
+
+	public MessageTemplate getConnectingTitle() {
+		return connectingTitle;
+	}
+
+	public MessageTemplate getConnectingActionBar() {
+		return connectingActionBar;
+	}
+
+	public MessageTemplate getFailedTitle() {
+		return failedTitle;
+	}
+
+	public MessageTemplate getFailedActionBar() {
+		return failedActionBar;
+	}
+
+	public int getMaxReconnectTries() {
+		return maxReconnectTries;
+	}
+
+	public int getReconnectMillis() {
+		return reconnectMillis;
+	}
+
+	public int getReconnectTimeout() {
+		return reconnectTimeout;
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	public int getAdaptiveMinSamples() {
+		return adaptiveMinSamples;
+	}
+
+	public long getAdaptiveMinDeadline() {
+		return adaptiveMinDeadline;
+	}
+
+	public long getAdaptiveMaxDeadline() {
+		return adaptiveMaxDeadline;
+	}
+
+	public int getMaxRetryDelay() {
+		return maxRetryDelay;
+	}
+
+	public int getUiRefreshMillis() {
+		return uiRefreshMillis;
+	}
+
+	public boolean isLimbo() {
+		return limbo;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public long getReconnectDeadline() {
+		return reconnectDeadline;
+	}
+
+	public int getAdmissionBatchSize() {
+		return admissionBatchSize;
+	}
+
+	public int getAdmissionInterval() {
+		return admissionInterval;
+	}
+
+	public int getMetricsDumpInterval() {
+		return metricsDumpInterval;
+	}
+
+	public String getReadinessMarker() {
+		return readinessMarker;
+	}
+
+	public int getServerGroupsRefreshInterval() {
+		return serverGroupsRefreshInterval;
+	}
+
+	public ServerGroups getServerGroups() {
+		return serverGroups;
+	}
+
+	public int getRaceWidth() {
+		return raceWidth;
+	}
+
+	public long getPlannedRestartDeadline() {
+		return plannedRestartDeadline;
+	}
+
+	public int getPlannedRestartBatchSize() {
+		return plannedRestartBatchSize;
+	}
+
+	public String getPlannedRestartPriorityPermission() {
+		return plannedRestartPriorityPermission;
+	}
+
+	public String getPlannedRestartMessage() {
+		return plannedRestartMessage;
+	}
+
+	public String getStateStoreType() {
+		return stateStoreType;
+	}
+
+	public int getStateStoreCapacity() {
+		return stateStoreCapacity;
+	}
+
+	public long getStateTtl() {
+		return stateTtl;
+	}
+
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	public long getCircuitBreakerOpenTime() {
+		return circuitBreakerOpenTime;
+	}
+
+	public long getCircuitBreakerDownTime() {
+		return circuitBreakerDownTime;
+	}
+
+	public boolean isBufferEnabled() {
+		return bufferEnabled;
+	}
+
+	public int getBufferMaxPackets() {
+		return bufferMaxPackets;
+	}
+
+	public int getBufferMaxBytes() {
+		return bufferMaxBytes;
+	}
+
+	public long getBufferMaxTotalBytes() {
+		return bufferMaxTotalBytes;
+	}
+
+	/**
+	 * @param server The server the player is or should be connected to.
+	 * @return true, if players shouldn't be reconnected to the server.
+	 */
+	public boolean isIgnored(ServerInfo server) {
+		return ignoredServers.contains(server);
+	}
+
+	public KickClassifier getKickClassifier() {
+		return kickClassifier;
+	}
+
+}
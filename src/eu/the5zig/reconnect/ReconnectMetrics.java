@@ -0,0 +1,275 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.util.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of all reconnect tasks. Recording is lock-free and doesn't allocate, so it can be
+ * done on the Netty threads and the retry scheduler without slowing them down.<br>
+ * The metrics can be shown with /reconnect stats or dumped into a file in the Prometheus text format, so that they
+ * can be collected by the textfile collector of the node exporter.
+ */
+public class ReconnectMetrics {
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	private final AtomicLong tasks = new AtomicLong();
+	private final AtomicLong tries = new AtomicLong();
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong successes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+	private final AtomicLong disconnects = new AtomicLong();
+	private final ConcurrentHashMap<String, AtomicLong> failureCauses = new ConcurrentHashMap<>();
+
+	/**
+	 * The time in milliseconds a login took until the server accepted or refused the connection.
+	 */
+	private final Histogram connectLatency = new Histogram();
+	/**
+	 * The time in milliseconds between the kick and the successful reconnect.
+	 */
+	private final Histogram timeToReconnect = new Histogram();
+	/**
+	 * The time in milliseconds players waited before they were given up and moved to the fallback server or disconnected.
+	 */
+	private final Histogram timeToGiveUp = new Histogram();
+	/**
+	 * The time in milliseconds it took to empty an admission queue after its server came back.
+	 */
+	private final Histogram drainTime = new Histogram();
+
+	private long lastSampleTime = System.nanoTime();
+	private long lastSampleAttempts;
+	private volatile double attemptsPerSecond;
+
+	/**
+	 * Records that a new reconnect task has been started.
+	 */
+	void recordTask() {
+		tasks.incrementAndGet();
+	}
+
+	/**
+	 * Records a call of {@link ReconnectTask#tryReconnect()} that didn't give up.
+	 */
+	void recordTry() {
+		tries.incrementAndGet();
+	}
+
+	/**
+	 * Records that a login to a server has been started.
+	 */
+	void recordAttempt() {
+		attempts.incrementAndGet();
+	}
+
+	/**
+	 * Records a successful login.
+	 *
+	 * @param connectMillis The time the login took.
+	 * @param waitedMillis  The time the player waited since he has been kicked.
+	 */
+	void recordSuccess(long connectMillis, long waitedMillis) {
+		successes.incrementAndGet();
+		connectLatency.record(connectMillis);
+		timeToReconnect.record(waitedMillis);
+	}
+
+	/**
+	 * Records a failed login.
+	 *
+	 * @param connectMillis The time until the login failed.
+	 * @param cause         The reason the login failed, may be null.
+	 */
+	void recordFailure(long connectMillis, Throwable cause) {
+		failures.incrementAndGet();
+		connectLatency.record(connectMillis);
+
+		String name = cause == null ? "Unknown" : cause.getClass().getSimpleName();
+		AtomicLong counter = failureCauses.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = failureCauses.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Records that a player has run out of reconnect tries.
+	 *
+	 * @param waitedMillis The time the player waited since he has been kicked.
+	 * @param fallback     true, if the player has been moved to the fallback server, false if he has been disconnected.
+	 */
+	void recordGiveUp(long waitedMillis, boolean fallback) {
+		(fallback ? fallbacks : disconnects).incrementAndGet();
+		timeToGiveUp.record(waitedMillis);
+	}
+
+	/**
+	 * Records that an admission queue has been emptied.
+	 *
+	 * @param drainMillis The time between the first queued player and the last admitted player.
+	 */
+	void recordDrain(long drainMillis) {
+		drainTime.record(drainMillis);
+	}
+
+	/**
+	 * Updates the attempts per second. This method is called periodically by the plugin.
+	 */
+	synchronized void sample() {
+		long now = System.nanoTime();
+		long currentAttempts = attempts.get();
+		long elapsed = now - lastSampleTime;
+		if (elapsed > 0) {
+			attemptsPerSecond = (currentAttempts - lastSampleAttempts) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+		}
+		lastSampleTime = now;
+		lastSampleAttempts = currentAttempts;
+	}
+
+	/**
+	 * Writes all metrics to a file in the Prometheus text format. The file is written to a temporary file first and
+	 * then moved, so that a collector never reads an incomplete file.
+	 *
+	 * @param file    The file the metrics should be written to.
+	 * @param waiting The amount of players that are currently waiting for a reconnect.
+	 * @param queues  The admission queues of all servers.
+	 * @throws IOException if the file could not be written.
+	 */
+	void dump(File file, int waiting, Collection<AdmissionQueue> queues) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+			writeGauge(writer, "reconnect_waiting_players", "Players that are currently waiting for a reconnect.", waiting);
+			writeCounter(writer, "reconnect_tasks_total", "Reconnect tasks that have been started.", tasks.get());
+			writeCounter(writer, "reconnect_tries_total", "Reconnect tries, including those that waited for the server.", tries.get());
+			writeCounter(writer, "reconnect_attempts_total", "Logins that have been started.", attempts.get());
+			writeCounter(writer, "reconnect_successes_total", "Logins that succeeded.", successes.get());
+			writeCounter(writer, "reconnect_fallbacks_total", "Players that have been moved to the fallback server.", fallbacks.get());
+			writeCounter(writer, "reconnect_disconnects_total", "Players that have been disconnected after running out of tries.", disconnects.get());
+
+			writer.println("# HELP reconnect_failures_total Logins that failed, by cause.");
+			writer.println("# TYPE reconnect_failures_total counter");
+			for (Map.Entry<String, AtomicLong> entry : failureCauses.entrySet()) {
+				writer.println("reconnect_failures_total{cause=\"" + entry.getKey() + "\"} " + entry.getValue().get());
+			}
+
+			writeSummary(writer, "reconnect_connect_latency_milliseconds", "Time until a login succeeded or failed.", connectLatency);
+			writeSummary(writer, "reconnect_time_to_reconnect_milliseconds", "Time between the kick and the successful reconnect.", timeToReconnect);
+			writeSummary(writer, "reconnect_time_to_give_up_milliseconds", "Time between the kick and giving up.", timeToGiveUp);
+			writeSummary(writer, "reconnect_admission_drain_milliseconds", "Time until an admission queue has been emptied.", drainTime);
+
+			writer.println("# HELP reconnect_admission_queue_depth Players that are waiting for their turn to login, by server.");
+			writer.println("# TYPE reconnect_admission_queue_depth gauge");
+			for (AdmissionQueue queue : queues) {
+				writer.println("reconnect_admission_queue_depth{server=\"" + queue.getTarget().getName() + "\"} " + queue.getDepth());
+			}
+			writer.println("# HELP reconnect_admission_queue_max_depth Maximum queue depth of the current or last drain, by server.");
+			writer.println("# TYPE reconnect_admission_queue_max_depth gauge");
+			for (AdmissionQueue queue : queues) {
+				writer.println("reconnect_admission_queue_max_depth{server=\"" + queue.getTarget().getName() + "\"} " + queue.getMaxDepth());
+			}
+			writer.println("# HELP reconnect_admission_last_drain_milliseconds Time it took to empty the queue the last time, by server.");
+			writer.println("# TYPE reconnect_admission_last_drain_milliseconds gauge");
+			for (AdmissionQueue queue : queues) {
+				writer.println("reconnect_admission_last_drain_milliseconds{server=\"" + queue.getTarget().getName() + "\"} " + queue.getLastDrainMillis());
+			}
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeGauge(PrintWriter writer, String name, String help, long value) {
+		writer.println("# HELP " + name + " " + help);
+		writer.println("# TYPE " + name + " gauge");
+		writer.println(name + " " + value);
+	}
+
+	private static void writeCounter(PrintWriter writer, String name, String help, long value) {
+		writer.println("# HELP " + name + " " + help);
+		writer.println("# TYPE " + name + " counter");
+		writer.println(name + " " + value);
+	}
+
+	private static void writeSummary(PrintWriter writer, String name, String help, Histogram histogram) {
+		writer.println("# HELP " + name + " " + help);
+		writer.println("# TYPE " + name + " summary");
+		for (double quantile : QUANTILES) {
+			writer.println(name + "{quantile=\"" + quantile + "\"} " + histogram.getPercentile(quantile));
+		}
+		writer.println(name + "_sum " + histogram.getSum());
+		writer.println(name + "_count " + histogram.getCount());
+	}
+
+	public long getTasks() {
+		return tasks.get();
+	}
+
+	public long getTries() {
+		return tries.get();
+	}
+
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	public long getSuccesses() {
+		return successes.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	public long getDisconnects() {
+		return disconnects.get();
+	}
+
+	/**
+	 * @return the amount of failed logins by the simple class name of their cause.
+	 */
+	public Map<String, AtomicLong> getFailureCauses() {
+		return failureCauses;
+	}
+
+	public double getAttemptsPerSecond() {
+		return attemptsPerSecond;
+	}
+
+	public Histogram getConnectLatency() {
+		return connectLatency;
+	}
+
+	public Histogram getTimeToReconnect() {
+		return timeToReconnect;
+	}
+
+	public Histogram getTimeToGiveUp() {
+		return timeToGiveUp;
+	}
+
+	public Histogram getDrainTime() {
+		return drainTime;
+	}
+
+}
@@ -1,242 +1,408 @@
 package eu.the5zig.reconnect;
 
-import eu.the5zig.reconnect.net.BasicChannelInitializer;
-import eu.the5zig.reconnect.util.Utils;
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.*;
-import io.netty.util.internal.PlatformDependent;
+import eu.the5zig.reconnect.net.ConnectRace;
+import eu.the5zig.reconnect.util.MessageTemplate;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
 import net.md_5.bungee.BungeeServerInfo;
 import net.md_5.bungee.ServerConnection;
 import net.md_5.bungee.UserConnection;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.ProxyServer;
-import net.md_5.bungee.api.Title;
 import net.md_5.bungee.api.chat.TextComponent;
 import net.md_5.bungee.api.config.ServerInfo;
-import net.md_5.bungee.netty.PipelineUtils;
-import net.md_5.bungee.protocol.packet.KeepAlive;
+import net.md_5.bungee.protocol.packet.Chat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
-
-import com.google.common.base.Strings;
-
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reconnects a single User. The retries, the logins, the result of the ServerReconnectEvent and the messages of the
+ * task all run on the EventLoop of the User's own connection, which is also the loop BungeeCord uses for his server
+ * connections, so the task and the UserConnection are never handed over to another thread and the work of all tasks
+ * is spread across all Netty worker threads. Only canceling may happen on other threads, which is why the state is
+ * atomic.<br>
+ * The AdmissionQueue, CircuitBreaker and ServerProber of the target are shared by all tasks of the server. A retry only
+ * reads them without locking, their locks are taken when a task joins the admission queue or while the breaker isn't
+ * closed.
+ */
 public class ReconnectTask {
 
-	private static final Random RANDOM = new Random();
-	private static final TextComponent EMPTY = new TextComponent("");
+	/**
+	 * The states of a reconnect task. A task switches between WAITING and CONNECTING until it is either FINISHED
+	 * or CANCELED.
+	 */
+	public enum State {
+		WAITING, CONNECTING, FINISHED, CANCELED
+	}
+
+	private static final Chat CLEAR_ACTION_BAR = MessageTemplate.createChatPacket(ChatMessageType.ACTION_BAR, new TextComponent(""));
 
 	private final Reconnect instance;
 	private final ProxyServer bungee;
 	private final UserConnection user;
 	private final ServerConnection server;
 	private final BungeeServerInfo target;
+	private final long deadline;
+	private final int priority;
+	private final EventLoop eventLoop;
 
+	private final long startTime = System.currentTimeMillis();
+	private final AtomicReference<State> state = new AtomicReference<>(State.WAITING);
+
+	// Only accessed on the EventLoop.
 	private int tries;
+	private long delay;
+	// The time the task spent in the admission queue or connecting, which doesn't count towards the deadline.
+	private long admittedSince;
+	private long admittedMillis;
+	private volatile ScheduledFuture<?> retry;
+
+	private final Runnable retryTask = new Runnable() {
+		@Override
+		public void run() {
+			if (isDone()) {
+				return;
+			}
+			// Only retry to reconnect the user if he is still online and hasn't been moved to another server.
+			if (instance.isUserOnline(user) && Objects.equals(user.getServer(), server)) {
+				tryReconnect();
+			} else {
+				instance.cancelReconnectTask(ReconnectTask.this);
+			}
+		}
+	};
+
+	private final Runnable connectTask = new Runnable() {
+		@Override
+		public void run() {
+			connect();
+		}
+	};
 
-	public ReconnectTask(Reconnect instance, ProxyServer bungee, UserConnection user, ServerConnection server) {
+	public ReconnectTask(Reconnect instance, ProxyServer bungee, UserConnection user, ServerConnection server, BungeeServerInfo target, long deadline, int priority) {
 		this.instance = instance;
 		this.bungee = bungee;
 		this.user = user;
 		this.server = server;
-		this.target = server.getInfo();
+		this.target = target;
+		this.deadline = deadline;
+		this.priority = priority;
+		this.eventLoop = user.getCh().getHandle().eventLoop();
+	}
+
+	/**
+	 * Starts reconnecting the User, either immediately or after the specified delay.
+	 *
+	 * @param initialDelay The amount of milliseconds before the first reconnect try.
+	 */
+	void start(long initialDelay) {
+		scheduleRetry(Math.max(initialDelay, 0));
 	}
 
 	/**
 	 * Tries to reconnect the User to the specified Server. In case that fails, this method will be executed again
-	 * after a short timeout.
+	 * after a short timeout. Must be called on the EventLoop of the User.
 	 */
-	public void tryReconnect() {
-		if (tries + 1 > instance.getMaxReconnectTries()) {
-			// If we have reached the maximum reconnect limit, proceed BungeeCord-like.
-			instance.cancelReconnectTask(user.getUniqueId());
-
-			ServerInfo def = bungee.getServerInfo(user.getPendingConnection().getListener().getFallbackServer());
-			if (target != def) {
-				// If the fallback-server is not the same server we tried to reconnect to, send the user to that one instead.
-				server.setObsolete(true);
-				user.connectNow(def);
-				user.sendMessage(bungee.getTranslation("server_went_down"));
-
-				// Send fancy title if it's enabled in config, otherwise reset the connecting title.
-				if (!instance.getFailedTitle().isEmpty())
-					user.sendTitle(createFailedTitle());
-				else
-					user.sendTitle(ProxyServer.getInstance().createTitle().reset());
-
-				// Send fancy action bar message if it's enabled in config, otherwise reset the connecting action bar message.
-				if (!instance.getFailedActionBar().isEmpty())
-					sendFailedActionBar(user);
-				else
-					user.sendMessage(ChatMessageType.ACTION_BAR, EMPTY);
-			} else {
-				// Otherwise, disconnect the user with a "Lost Connection"-message.
-				user.disconnect(bungee.getTranslation("lost_connection"));
+	private void tryReconnect() {
+		ReconnectConfig config = instance.getConfig();
+		if (state.get() == State.CONNECTING || instance.getAdmissionQueue(target).contains(this)) {
+			// The server is back and the player is only waiting for his turn, so he must not run out of tries meanwhile.
+			if (admittedSince == 0) {
+				admittedSince = System.currentTimeMillis();
 			}
+			scheduleRetry(delay);
+			return;
+		}
+		if (admittedSince != 0) {
+			admittedMillis += System.currentTimeMillis() - admittedSince;
+			admittedSince = 0;
+		}
+		if (isExhausted(config)) {
+			// If the server didn't come back in time, the next players should wait longer.
+			instance.getProber(target).recordGiveUp();
+			// If we have reached the maximum reconnect limit, proceed BungeeCord-like.
+			giveUp(config);
 			return;
 		}
+		if (!instance.getCircuitBreaker(target).allowRequest(this)) {
+			// The server seems to be hard-down, so don't let the player wait any longer.
+			giveUp(config);
+			return;
+		}
+
+		delay = config.getRetryPolicy().nextDelay(tries, delay);
+		tries++;
+		instance.getMetrics().recordTry();
+
+		// The reconnecting title, action bar message and KeepAlive Packets are sent by the StatusBroadcaster.
+
+		// Don't try to login as long as the server doesn't even answer a status ping.
+		ServerProber prober = instance.getProber(target);
+		prober.subscribe(user.getUniqueId());
+		if (prober.isAvailable()) {
+			// Wait for our turn, so that the server won't be flooded with logins as soon as it's back.
+			instance.getAdmissionQueue(target).offer(this);
+		}
+		scheduleRetry(delay);
+	}
+
+	/**
+	 * Stops reconnecting the User and proceeds BungeeCord-like: the User is sent to the fallback server, or
+	 * disconnected if he has been waiting for the fallback server.
+	 */
+	private void giveUp(ReconnectConfig config) {
+		instance.cancelReconnectTask(this);
+		instance.getStateStore().remove(user.getUniqueId());
+
+		ServerInfo def = instance.getFallbackServer(user, target);
+		instance.getMetrics().recordGiveUp(System.currentTimeMillis() - startTime, target != def);
+		if (target != def) {
+			// If the fallback-server (or another server of the group) is not the same server we tried to reconnect to, send the user to that one instead.
+			server.setObsolete(true);
+			instance.connectToServer(user, def);
+			user.sendMessage(bungee.getTranslation("server_went_down"));
+
+			// Send fancy title if it's enabled in config, otherwise reset the connecting title.
+			if (!config.getFailedTitle().isEmpty())
+				config.getFailedTitle().sendTitle(user, 0);
+			else
+				user.sendTitle(ProxyServer.getInstance().createTitle().reset());
+
+			// Send fancy action bar message if it's enabled in config, otherwise reset the connecting action bar message.
+			if (!config.getFailedActionBar().isEmpty())
+				sendFailedActionBar(user, config.getFailedActionBar());
+			else
+				user.unsafe().sendPacket(CLEAR_ACTION_BAR);
+		} else {
+			// Otherwise, disconnect the user with a "Lost Connection"-message.
+			user.disconnect(bungee.getTranslation("lost_connection"));
+		}
+	}
 
+	/**
+	 * Starts a login to the specified Server. This method is called by the {@link AdmissionQueue} as soon as it's
+	 * this User's turn to connect. If it's called from another thread, the login is started on the EventLoop of the
+	 * User, since BungeeCord doesn't synchronize the pending connects.
+	 */
+	void connect() {
+		if (!eventLoop.inEventLoop()) {
+			eventLoop.execute(connectTask);
+			return;
+		}
+		if (!state.compareAndSet(State.WAITING, State.CONNECTING)) {
+			// The task is either already connecting or has been finished in the meantime.
+			return;
+		}
 		// If we are already connecting to a server, cancel the reconnect task.
 		if (user.getPendingConnects().contains(target)) {
 			instance.getLogger().warning("User already connecting to " + target);
+			state.compareAndSet(State.CONNECTING, State.WAITING);
 			return;
 		}
-		// Add pending connection.
-		user.getPendingConnects().add(target);
+		ReconnectConfig config = instance.getConfig();
+		instance.getMetrics().recordAttempt();
+		long connectStart = System.nanoTime();
+
+		// If the server is a member of a racing group, the player tries to login to the least-loaded other members that
+		// are online as well. The first login that completes wins, see ConnectRace.
+		List<BungeeServerInfo> candidates = new ArrayList<>(config.getRaceWidth());
+		candidates.add(target);
+		for (ServerInfo other : config.getServerGroups().selectRace(target, config.getRaceWidth() - 1)) {
+			if (!user.getPendingConnects().contains(other)) {
+				candidates.add((BungeeServerInfo) other);
+			}
+		}
+		ConnectRace race = candidates.size() > 1 ? new ConnectRace() : null;
+
+		// Clone the pre-configured Bootstrap of each server. All connections are added to the race before the listeners
+		// are added, since a listener is called immediately if its connection has already failed.
+		List<ChannelFuture> futures = new ArrayList<>(candidates.size());
+		for (BungeeServerInfo candidate : candidates) {
+			// Add pending connection.
+			user.getPendingConnects().add(candidate);
+			ChannelFuture future = config.getConnectTemplate(candidate).connect(user, eventLoop, instance.getConnectTimeout(candidate));
+			if (race != null) {
+				race.add(candidate, future.channel());
+			}
+			futures.add(future);
+		}
+		if (race != null) {
+			instance.registerConnectRace(user.getUniqueId(), race);
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			futures.get(i).addListener(new ConnectListener(candidates.get(i), race, connectStart));
+		}
+	}
 
-		tries++;
+	/**
+	 * Handles the connection to one of the servers of a login. It is called on the EventLoop of the new channel, which
+	 * is ours.
+	 */
+	private class ConnectListener implements ChannelFutureListener {
 
-		// Send fancy Title
-		if (!instance.getReconnectingTitle().isEmpty()) {
-			createReconnectTitle().send(user);
-		}
+		private final BungeeServerInfo candidate;
+		private final ConnectRace race;
+		private final long connectStart;
 
-		// Send fancy Action Bar Message
-		if (!instance.getReconnectingActionBar().isEmpty()) {
-			sendReconnectActionBar(user);
+		private ConnectListener(BungeeServerInfo candidate, ConnectRace race, long connectStart) {
+			this.candidate = candidate;
+			this.race = race;
+			this.connectStart = connectStart;
 		}
 
-		// Establish connection to the server.
-		ChannelInitializer<Channel> initializer = new BasicChannelInitializer(bungee, user, target);
-		ChannelFutureListener listener = new ChannelFutureListener() {
-			@Override
-			public void operationComplete(ChannelFuture future) throws Exception {
-				if (future.isSuccess()) {
-					// If reconnected successfully, remove from map and send another fancy title.
-					instance.cancelReconnectTask(user.getUniqueId());
-
-					// Send fancy Title
-					if (!instance.getConnectingTitle().isEmpty()) {
-						createConnectingTitle().send(user);
-					}
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+			if (future.isSuccess()) {
+				if (candidate == target) {
+					instance.getCircuitBreaker(target).recordSuccess();
+				}
+				if (instance.getConfig().isAdaptive()) {
+					// The restart duration is learned by the ServerProber, since it sees when the server actually went down.
+					instance.getServerProfiles().get(candidate).recordLatency(connectMillis);
+				}
+				// Only the first connection of a race finishes the task, the logins go on until one of them completes.
+				if (!state.compareAndSet(State.CONNECTING, State.FINISHED)) {
+					return;
+				}
+				// If reconnected successfully, remove from map and send another fancy title.
+				instance.cancelReconnectTask(ReconnectTask.this);
+				instance.getMetrics().recordSuccess(connectMillis, System.currentTimeMillis() - startTime);
+
+				ReconnectConfig config = instance.getConfig();
 
-					// Send fancy Action Bar Message
-					if (!instance.getConnectingActionBar().isEmpty()) {
-						sendConnectActionBar(user);
+				// Send fancy Title
+				if (!config.getConnectingTitle().isEmpty()) {
+					config.getConnectingTitle().sendTitle(user, 0);
+				}
+
+				// Send fancy Action Bar Message
+				if (!config.getConnectingActionBar().isEmpty()) {
+					config.getConnectingActionBar().sendActionBar(user, 0);
+				}
+			} else {
+				future.channel().close();
+				user.getPendingConnects().remove(candidate);
+				if (candidate == target) {
+					// The server answered a ping but didn't accept the connection, so wait for the next ping.
+					instance.getProber(target).reportFailure();
+					instance.getCircuitBreaker(target).recordFailure();
+				}
+				if (race == null || race.fail()) {
+					instance.getMetrics().recordFailure(connectMillis, future.cause());
+					if (race != null) {
+						instance.removeConnectRace(user.getUniqueId(), race);
 					}
-				} else {
-					future.channel().close();
-					user.getPendingConnects().remove(target);
-
-					// Send KeepAlive Packet so that the client won't time out.
-					user.unsafe().sendPacket(new KeepAlive(RANDOM.nextInt()));
-
-					// Schedule next reconnect.
-					Utils.scheduleAsync(instance, new Runnable() {
-						@Override
-						public void run() {
-							// Only retry to reconnect the user if he is still online and hasn't been moved to another server.
-							if (instance.isUserOnline(user) && Objects.equals(user.getServer(), server)) {
-								tryReconnect();
-							} else {
-								instance.cancelReconnectTask(user.getUniqueId());
-							}
-						}
-					}, instance.getReconnectMillis(), TimeUnit.MILLISECONDS);
+					state.compareAndSet(State.CONNECTING, State.WAITING);
 				}
 			}
-		};
-
-		// Create a new Netty Bootstrap that contains the ChannelInitializer and the ChannelFutureListener.
-		Bootstrap b = new Bootstrap().channel(PipelineUtils.getChannel()).group(server.getCh().getHandle().eventLoop()).handler(initializer).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, instance.getReconnectTimeout()).remoteAddress(target.getAddress());
-
-		// Windows is bugged, multi homed users will just have to live with random connecting IPs
-		if (user.getPendingConnection().getListener().isSetLocalAddress() && !PlatformDependent.isWindows()) {
-			b.localAddress(user.getPendingConnection().getListener().getHost().getHostString(), 0);
 		}
-		b.connect().addListener(listener);
+
 	}
 
 	/**
-	 * Creates a Title containing the reconnect-text.
+	 * Schedules the next reconnect try on the EventLoop of the User. The next try is scheduled even while a login is
+	 * in progress, so that the task notices if the login fails. KeepAlive Packets are sent by the
+	 * {@link StatusBroadcaster}.
 	 *
-	 * @return a Title that can be send to the player.
+	 * @param millis The amount of milliseconds until the next try.
 	 */
-	private Title createReconnectTitle() {
-		Title title = ProxyServer.getInstance().createTitle();
-		title.title(EMPTY);
-		title.subTitle(new TextComponent(instance.getReconnectingTitle().replace("{%dots%}", getDots())));
-		// Stay at least as long as the longest possible connect-time can be.
-		title.stay((instance.getReconnectMillis() + instance.getReconnectTimeout() + 1000) / 1000 * 20);
-		title.fadeIn(0);
-		title.fadeOut(0);
-
-		return title;
+	private void scheduleRetry(long millis) {
+		retry = eventLoop.schedule(retryTask, millis, TimeUnit.MILLISECONDS);
+		if (isDone()) {
+			// The task has been canceled while the retry was scheduled.
+			retry.cancel(false);
+		}
 	}
 
 	/**
-	 * Sends an Action Bar Message containing the reconnect-text to the player.
+	 * Marks this task as canceled, unless it has already finished, and cancels the next scheduled reconnect try.
 	 */
-	private void sendReconnectActionBar(UserConnection user) {
-		user.sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(instance.getReconnectingActionBar().replace("{%dots%}", getDots())));
+	void markCanceled() {
+		State current;
+		do {
+			current = state.get();
+		} while (current != State.FINISHED && current != State.CANCELED && !state.compareAndSet(current, State.CANCELED));
+
+		ScheduledFuture<?> retry = this.retry;
+		if (retry != null) {
+			retry.cancel(false);
+		}
 	}
 
 	/**
-	 * Creates a Title containing the connecting-text.
-	 *
-	 * @return a Title that can be send to the player.
+	 * @return true, if the User has reached either the reconnect deadline or the maximum amount of reconnect tries. The
+	 * time spent in the admission queue and the tries during that time are not counted.
 	 */
-	private Title createConnectingTitle() {
-		Title title = ProxyServer.getInstance().createTitle();
-		title.title(EMPTY);
-		title.subTitle(new TextComponent(instance.getConnectingTitle()));
-		title.stay(20);
-		title.fadeIn(10);
-		title.fadeOut(10);
-
-		return title;
+	private boolean isExhausted(ReconnectConfig config) {
+		if (deadline > 0) {
+			return System.currentTimeMillis() - startTime - admittedMillis >= deadline;
+		}
+		return tries + 1 > config.getMaxReconnectTries();
 	}
 
 	/**
-	 * Sends an Action Bar Message containing the connect-text to the player.
+	 * Sends an Action Bar Message containing the failed-text to the player.
 	 */
-	private void sendConnectActionBar(UserConnection user) {
-		user.sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(instance.getConnectingActionBar()));
+	private void sendFailedActionBar(final UserConnection user, MessageTemplate failedActionBar) {
+		failedActionBar.sendActionBar(user, 0);
+
+		// Send an empty action bar message after 5 seconds to make it disappear again.
+		eventLoop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				user.unsafe().sendPacket(CLEAR_ACTION_BAR);
+			}
+		}, 5L, TimeUnit.SECONDS);
 	}
 
 	/**
-	 * Created a Title containing the failed-text.
-	 *
-	 * @return a Title that can be send to the player.
+	 * @return true, if this task has either finished or has been canceled.
 	 */
-	private Title createFailedTitle() {
-		Title title = ProxyServer.getInstance().createTitle();
-		title.title(EMPTY);
-		title.subTitle(new TextComponent(instance.getFailedTitle()));
-		title.stay(80);
-		title.fadeIn(10);
-		title.fadeOut(10);
-
-		return title;
+	public boolean isDone() {
+		State current = state.get();
+		return current == State.FINISHED || current == State.CANCELED;
 	}
 
 	/**
-	 * Sends an Action Bar Message containing the failed-text to the player.
+	 * @return the current State of this task.
 	 */
-	private void sendFailedActionBar(final UserConnection user) {
-		user.sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(instance.getFailedActionBar()));
+	public State getState() {
+		return state.get();
+	}
 
-		// Send an empty action bar message after 5 seconds to make it disappear again.
-		bungee.getScheduler().schedule(instance, new Runnable() {
-			@Override
-			public void run() {
-				user.sendMessage(ChatMessageType.ACTION_BAR, EMPTY);
-			}
-		}, 5L, TimeUnit.SECONDS);
+	/**
+	 * @return the User that should be reconnected.
+	 */
+	public UserConnection getUser() {
+		return user;
 	}
 
 	/**
-	 * @return a String that is made of dots for the "dots animation".
+	 * @return the Server the User should be reconnected to.
 	 */
-	private String getDots() {
-		String dots = "";
+	public BungeeServerInfo getTarget() {
+		return target;
+	}
 
-		for (int i = 0, max = tries % 4; i < max; i++) {
-			dots += ".";
-		}
+	/**
+	 * @return the priority of the User in the admission queue.
+	 */
+	public int getPriority() {
+		return priority;
+	}
 
-		return dots;
+	/**
+	 * @return the time in milliseconds at which the User started waiting for the reconnect.
+	 */
+	public long getStartTime() {
+		return startTime;
 	}
 
 	/**
@@ -244,12 +410,13 @@ public class ReconnectTask {
 	 */
 	public void cancel() {
 		if (instance.isUserOnline(user)) {
-			if (!Strings.isNullOrEmpty(instance.getReconnectingTitle()) || !Strings.isNullOrEmpty(instance.getConnectingTitle())) {
+			ReconnectConfig config = instance.getConfig();
+			if (!config.getReconnectingTitle().isEmpty() || !config.getConnectingTitle().isEmpty()) {
 				// For some reason, we have to reset and clear the title, so it completely disappears -> BungeeCord bug?
 				bungee.createTitle().reset().clear().send(user);
 			}
-			if (!Strings.isNullOrEmpty(instance.getConnectingActionBar())) {
-				user.sendMessage(ChatMessageType.ACTION_BAR, EMPTY);
+			if (!config.getConnectingActionBar().isEmpty()) {
+				user.unsafe().sendPacket(CLEAR_ACTION_BAR);
 			}
 		}
 	}
@@ -0,0 +1,80 @@
+package eu.the5zig.reconnect;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The reconnect tasks of all players, by their UniqueId.<br>
+ * The registry is accessed from the Netty threads, the retry scheduler and the BungeeCord event threads. Registering
+ * and removing a task are single atomic operations, so a player can never have two tasks and a task is only removed
+ * (and released) by exactly one caller.
+ */
+public class ReconnectTaskRegistry {
+
+	private final ConcurrentHashMap<UUID, ReconnectTask> tasks = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers the reconnect task of a User, unless he already has got one.
+	 *
+	 * @param uuid The UniqueId of the User.
+	 * @param task The new ReconnectTask.
+	 * @return true, if the task has been registered, false if the User already has got a task.
+	 */
+	public boolean register(UUID uuid, ReconnectTask task) {
+		return tasks.putIfAbsent(uuid, task) == null;
+	}
+
+	/**
+	 * Removes the reconnect task of a User, no matter which task it is.
+	 *
+	 * @param uuid The UniqueId of the User.
+	 * @return the removed ReconnectTask, or null if the User didn't have a task.
+	 */
+	public ReconnectTask remove(UUID uuid) {
+		return tasks.remove(uuid);
+	}
+
+	/**
+	 * Removes a reconnect task, but only if it is still the current task of its User. This way, a finished task can't
+	 * accidentally remove a new task of the same User.
+	 *
+	 * @param uuid The UniqueId of the User.
+	 * @param task The ReconnectTask that should be removed.
+	 * @return true, if the task has been removed by this call.
+	 */
+	public boolean remove(UUID uuid, ReconnectTask task) {
+		return tasks.remove(uuid, task);
+	}
+
+	/**
+	 * @param uuid The UniqueId of the User.
+	 * @return the current reconnect task of the User, or null if he doesn't have one.
+	 */
+	public ReconnectTask get(UUID uuid) {
+		return tasks.get(uuid);
+	}
+
+	/**
+	 * @param uuid The UniqueId of the User.
+	 * @return true, if the User has got a reconnect task.
+	 */
+	public boolean contains(UUID uuid) {
+		return tasks.containsKey(uuid);
+	}
+
+	/**
+	 * @return a live view of all registered reconnect tasks.
+	 */
+	public Collection<ReconnectTask> getTasks() {
+		return tasks.values();
+	}
+
+	/**
+	 * @return the amount of registered reconnect tasks.
+	 */
+	public int size() {
+		return tasks.size();
+	}
+
+}
@@ -0,0 +1,219 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.ServerPing;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups of servers that can replace each other if one of them stays down for too long.<br>
+ * Instead of sending all players of a dead server to the single fallback server, each of them is sent to the
+ * least-loaded live member of the dead server's group. The load of all members is taken from a snapshot that is
+ * refreshed periodically with one status ping per server, so selecting a server never pings anything.<br>
+ * The members of racing groups are all equally fine for a player, so a reconnecting player tries to login to several of
+ * them at once, see {@link eu.the5zig.reconnect.net.ConnectRace}.
+ */
+public class ServerGroups {
+
+	/**
+	 * The last known load of a server. A new instance replaces the old one after each status ping.
+	 */
+	private static class ServerLoad {
+
+		private final ServerInfo server;
+		private final boolean online;
+		private final int players;
+		private final int maxPlayers;
+		private final long latency;
+		/**
+		 * The players that have been sent to this server since the last ping and are not included in the player count yet.
+		 */
+		private final AtomicInteger assigned = new AtomicInteger();
+
+		private ServerLoad(ServerInfo server, boolean online, int players, int maxPlayers, long latency) {
+			this.server = server;
+			this.online = online;
+			this.players = players;
+			this.maxPlayers = maxPlayers;
+			this.latency = latency;
+		}
+
+		/**
+		 * @return true, if this server should be preferred over the other one.
+		 */
+		private boolean isLessLoadedThan(ServerLoad other) {
+			int compare = Double.compare(getOccupancy(), other.getOccupancy());
+			return compare < 0 || compare == 0 && latency < other.latency;
+		}
+
+		private double getOccupancy() {
+			int total = players + assigned.get();
+			return maxPlayers > 0 ? (double) total / maxPlayers : total;
+		}
+
+	}
+
+	private final Reconnect instance;
+	/**
+	 * All other members of the group of each server, by the name of the server.
+	 */
+	private final Map<String, List<String>> alternatives = new HashMap<>();
+	/**
+	 * All other members of the racing group of each server, by the name of the server.
+	 */
+	private final Map<String, List<String>> racingAlternatives = new HashMap<>();
+	private final Set<String> members = new LinkedHashSet<>();
+
+	private final ConcurrentHashMap<String, ServerLoad> loads = new ConcurrentHashMap<>();
+
+	/**
+	 * @param instance The plugin instance.
+	 * @param groups   The names of the members of each group, by the name of the group.
+	 * @param racing   The names of the groups whose members may be raced.
+	 */
+	public ServerGroups(Reconnect instance, Map<String, List<String>> groups, Set<String> racing) {
+		this.instance = instance;
+		for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+			addGroup(alternatives, group.getValue());
+			if (racing.contains(group.getKey())) {
+				addGroup(racingAlternatives, group.getValue());
+			}
+			members.addAll(group.getValue());
+		}
+	}
+
+	private static void addGroup(Map<String, List<String>> alternatives, List<String> group) {
+		for (String server : group) {
+			List<String> others = alternatives.get(server);
+			if (others == null) {
+				alternatives.put(server, others = new ArrayList<>());
+			}
+			for (String other : group) {
+				if (!other.equals(server) && !others.contains(other)) {
+					others.add(other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a status ping to each member of all groups and replaces its load in the snapshot once it answers.
+	 * This method is called periodically by the plugin.
+	 */
+	public void refresh() {
+		for (String name : members) {
+			final ServerInfo server = instance.getProxy().getServerInfo(name);
+			if (server == null) {
+				continue;
+			}
+			final long start = System.nanoTime();
+			server.ping(new Callback<ServerPing>() {
+				@Override
+				public void done(ServerPing result, Throwable error) {
+					long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					if (error == null && result != null && result.getPlayers() != null) {
+						loads.put(server.getName(), new ServerLoad(server, true, result.getPlayers().getOnline(), result.getPlayers().getMax(), latency));
+					} else {
+						loads.put(server.getName(), new ServerLoad(server, false, 0, 0, latency));
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Selects the least-loaded live member of a server's group. Selecting a server doesn't change its load, call
+	 * {@link #assign(ServerInfo)} once a player is actually sent to it.
+	 *
+	 * @param failed The server that is not available.
+	 * @return the least-loaded server of the group, or null if the server isn't in any group or no other member is online.
+	 */
+	public ServerInfo select(ServerInfo failed) {
+		List<String> others = alternatives.get(failed.getName());
+		if (others == null) {
+			return null;
+		}
+		ServerLoad best = null;
+		for (String name : others) {
+			ServerLoad load = loads.get(name);
+			if (load != null && load.online && (best == null || load.isLessLoadedThan(best))) {
+				best = load;
+			}
+		}
+		return best != null ? best.server : null;
+	}
+
+	/**
+	 * Records that a player has been sent to a server. The server is assumed to have one more player until the next
+	 * refresh, so that players who are displaced at the same time are spread across the group.
+	 *
+	 * @param server The server the player has been sent to.
+	 */
+	public void assign(ServerInfo server) {
+		ServerLoad load = loads.get(server.getName());
+		if (load != null) {
+			load.assigned.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Selects the least-loaded live members of a server's racing group. The servers aren't assigned to the player,
+	 * since he will only stay on one of them.
+	 *
+	 * @param target The server the player should be reconnected to.
+	 * @param count  The maximum amount of servers.
+	 * @return the other servers the player may login to, the least-loaded first. The list is empty if the server isn't
+	 * in any racing group.
+	 */
+	public List<ServerInfo> selectRace(ServerInfo target, int count) {
+		List<String> others = racingAlternatives.get(target.getName());
+		if (others == null) {
+			return Collections.emptyList();
+		}
+		List<ServerLoad> live = new ArrayList<>(others.size());
+		for (String name : others) {
+			ServerLoad load = loads.get(name);
+			if (load != null && load.online) {
+				live.add(load);
+			}
+		}
+		// The load may change while selecting, so the servers are picked one by one instead of sorting them.
+		List<ServerInfo> selected = new ArrayList<>(Math.min(count, live.size()));
+		while (selected.size() < count && !live.isEmpty()) {
+			ServerLoad best = null;
+			for (ServerLoad load : live) {
+				if (best == null || load.isLessLoadedThan(best)) {
+					best = load;
+				}
+			}
+			live.remove(best);
+			selected.add(best.server);
+		}
+		return selected;
+	}
+
+	/**
+	 * @return true, if there are no groups configured.
+	 */
+	public boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	/**
+	 * @return the names of all servers that are a member of any group.
+	 */
+	public Set<String> getMembers() {
+		return Collections.unmodifiableSet(members);
+	}
+
+}
@@ -0,0 +1,208 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.ServerPing;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the availability of a single server while players are waiting to be reconnected to it.<br>
+ * Instead of letting every waiting player open its own connection, one status ping is sent per server and all
+ * reconnect tasks just check the result before they start a real login.<br>
+ * If a readiness marker is configured, a server that answers the ping is only considered available once its MOTD
+ * contains the marker, so that players aren't sent to a server that is still loading its worlds and plugins.<br>
+ * The prober also learns the restart durations of the server. An outage is only recorded if a ping has not been answered
+ * after the players started waiting, and it ends once the server is available again, so players who are kicked from a
+ * server that is still up don't count as a restart.
+ */
+public class ServerProber {
+
+	/**
+	 * The maximum amount of doublings of the probe interval while the server does not answer.
+	 */
+	private static final int MAX_BACKOFF_SHIFT = 2;
+	/**
+	 * The minimum amount of milliseconds between two pings, so that a reconnect-time of 0 won't flood the server.
+	 */
+	private static final long MIN_PROBE_INTERVAL = 100;
+
+	private final Reconnect instance;
+	private final BungeeServerInfo target;
+
+	/**
+	 * All players that are currently waiting for this server.
+	 */
+	private final Set<UUID> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+	private final AtomicBoolean probing = new AtomicBoolean();
+
+	private volatile boolean available;
+	private volatile int failedProbes;
+	/**
+	 * The time of the first unanswered ping since the server answered the last time, or 0 if it answered the last ping.
+	 */
+	private volatile long downSince;
+
+	// The outage that is currently observed, guarded by this.
+	/**
+	 * The time at which probing started, i.e. the first player started waiting.
+	 */
+	private long probeStart;
+	/**
+	 * The time at which the current outage started, or 0 if no ping has been unanswered since probing started.
+	 */
+	private long outageStart;
+	/**
+	 * true, if players have already been given up during the current outage.
+	 */
+	private boolean outageGivenUp;
+
+	public ServerProber(Reconnect instance, BungeeServerInfo target) {
+		this.instance = instance;
+		this.target = target;
+	}
+
+	/**
+	 * Registers a player that waits for this server and starts probing, if it isn't running already.
+	 *
+	 * @param uuid The UniqueId of the waiting User.
+	 */
+	public void subscribe(UUID uuid) {
+		subscribers.add(uuid);
+		if (probing.compareAndSet(false, true)) {
+			// The last result might be from a previous outage, so don't trust it.
+			available = false;
+			failedProbes = 0;
+			downSince = 0;
+			synchronized (this) {
+				probeStart = System.currentTimeMillis();
+				outageStart = 0;
+				outageGivenUp = false;
+			}
+			probe();
+		}
+	}
+
+	/**
+	 * Removes a player from the waiting players. Probing stops after the next ping if nobody is waiting anymore.
+	 *
+	 * @param uuid The UniqueId of the User.
+	 */
+	public void unsubscribe(UUID uuid) {
+		subscribers.remove(uuid);
+	}
+
+	/**
+	 * Marks the server as unavailable again, e.g. if it answered a ping but a login attempt failed afterwards.
+	 */
+	public void reportFailure() {
+		available = false;
+	}
+
+	/**
+	 * @return true, if the server answered the last status ping and reported that it is ready.
+	 */
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * @return the amount of players that are currently waiting for this server.
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	private void probe() {
+		target.ping(new Callback<ServerPing>() {
+			@Override
+			public void done(ServerPing result, Throwable error) {
+				if (error == null && result != null) {
+					// The server is up, so don't back off even if it's still starting.
+					available = isReady(result);
+					failedProbes = 0;
+					downSince = 0;
+					if (available) {
+						endOutage();
+					}
+				} else {
+					long now = System.currentTimeMillis();
+					if (downSince == 0) {
+						downSince = now;
+					}
+					available = false;
+					failedProbes++;
+					startOutage();
+					instance.getCircuitBreaker(target).recordDown(now - downSince);
+				}
+				scheduleNextProbe();
+			}
+		});
+	}
+
+	/**
+	 * Records that players have been given up while waiting for this server. The first give-up of an outage is learned
+	 * as an outage that lasted too long, later ones and the end of the outage are not recorded anymore.
+	 */
+	public synchronized void recordGiveUp() {
+		if (outageStart != 0 && !outageGivenUp) {
+			outageGivenUp = true;
+			if (instance.getConfig().isAdaptive()) {
+				instance.getServerProfiles().get(target).recordGiveUp(System.currentTimeMillis() - outageStart);
+			}
+		}
+	}
+
+	/**
+	 * The server didn't answer a ping, so it has been down since the players started waiting.
+	 */
+	private synchronized void startOutage() {
+		if (outageStart == 0) {
+			outageStart = probeStart;
+		}
+	}
+
+	/**
+	 * The server is available again, which ends the current outage.
+	 */
+	private synchronized void endOutage() {
+		if (outageStart != 0 && !outageGivenUp && instance.getConfig().isAdaptive()) {
+			instance.getServerProfiles().get(target).recordRestart(System.currentTimeMillis() - outageStart);
+		}
+		outageStart = 0;
+		outageGivenUp = false;
+	}
+
+	private boolean isReady(ServerPing ping) {
+		String marker = instance.getConfig().getReadinessMarker();
+		if (marker.isEmpty()) {
+			return true;
+		}
+		String description = ping.getDescription();
+		return description != null && ChatColor.stripColor(description).contains(marker);
+	}
+
+	private void scheduleNextProbe() {
+		if (subscribers.isEmpty()) {
+			probing.set(false);
+			// Someone might have subscribed right before we gave up probing.
+			if (subscribers.isEmpty() || !probing.compareAndSet(false, true)) {
+				return;
+			}
+		}
+		long delay = Math.max(instance.getConfig().getReconnectMillis(), MIN_PROBE_INTERVAL) << Math.min(failedProbes, MAX_BACKOFF_SHIFT);
+		instance.getRetryScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				probe();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,220 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.config.Configuration;
+import net.md_5.bungee.config.ConfigurationProvider;
+import net.md_5.bungee.config.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The learned restart durations and connect latencies of all servers.<br>
+ * Each value is kept as a moving average and a moving mean deviation, the same way TCP estimates its retransmission
+ * timeout. A server's reconnect deadline and connect timeout are derived from them, so that players wait long enough
+ * for slow servers without wasting time on fast ones. The profiles are stored in a small YAML file, so that they
+ * survive a proxy restart. The file holds a list of profiles with the name of their server, since the names may contain
+ * dots, which a Configuration would split into sections.
+ */
+public class ServerProfiles {
+
+	/**
+	 * The weights of a new sample in the moving average and the moving mean deviation.
+	 */
+	private static final double MEAN_WEIGHT = 1 / 8D;
+	private static final double DEVIATION_WEIGHT = 1 / 4D;
+	/**
+	 * The amount of mean deviations that are added to the average.
+	 */
+	private static final int DEVIATIONS = 4;
+	private static final int MIN_CONNECT_TIMEOUT = 1000;
+
+	/**
+	 * The profile of a single server.
+	 */
+	public static class Profile {
+
+		private double restartMean;
+		private double restartDeviation;
+		private int restarts;
+		private double latencyMean;
+		private double latencyDeviation;
+		private int latencies;
+
+		/**
+		 * Records an outage of the server that has been observed from its beginning to its end.
+		 *
+		 * @param millis The amount of milliseconds the server has been down.
+		 */
+		public synchronized void recordRestart(long millis) {
+			addRestart(millis);
+		}
+
+		/**
+		 * Records that players have been given up, since the server didn't come back in time. The outage has lasted
+		 * longer than the deadline allowed, so the window is doubled for this sample, like TCP backs off after a timeout.
+		 *
+		 * @param millis The amount of milliseconds the server has been down until the players were given up.
+		 */
+		public synchronized void recordGiveUp(long millis) {
+			addRestart(2 * millis);
+		}
+
+		/**
+		 * @param millis The amount of milliseconds it took to establish a connection to the server.
+		 */
+		public synchronized void recordLatency(long millis) {
+			if (latencies++ == 0) {
+				latencyMean = millis;
+				latencyDeviation = millis / 2D;
+			} else {
+				latencyDeviation += (Math.abs(millis - latencyMean) - latencyDeviation) * DEVIATION_WEIGHT;
+				latencyMean += (millis - latencyMean) * MEAN_WEIGHT;
+			}
+		}
+
+		private void addRestart(long millis) {
+			if (restarts++ == 0) {
+				restartMean = millis;
+				restartDeviation = millis / 2D;
+			} else {
+				restartDeviation += (Math.abs(millis - restartMean) - restartDeviation) * DEVIATION_WEIGHT;
+				restartMean += (millis - restartMean) * MEAN_WEIGHT;
+			}
+		}
+
+		/**
+		 * @return the amount of milliseconds a player should wait for the server, or 0 if not enough restarts have been
+		 * observed yet.
+		 */
+		public synchronized long getDeadline(int minSamples, long minDeadline, long maxDeadline) {
+			if (restarts < minSamples) {
+				return 0;
+			}
+			long deadline = (long) (restartMean + DEVIATIONS * restartDeviation);
+			return Math.min(Math.max(deadline, minDeadline), maxDeadline);
+		}
+
+		/**
+		 * @return the amount of milliseconds a connection to the server may take, or the maximum if not enough
+		 * connections have been observed yet.
+		 */
+		public synchronized int getConnectTimeout(int minSamples, int maxTimeout) {
+			if (latencies < minSamples) {
+				return maxTimeout;
+			}
+			int timeout = (int) (latencyMean + DEVIATIONS * latencyDeviation);
+			return Math.min(Math.max(timeout, MIN_CONNECT_TIMEOUT), maxTimeout);
+		}
+
+		private synchronized void load(Map<?, ?> entry) {
+			restartMean = getNumber(entry, "restart-mean").doubleValue();
+			restartDeviation = getNumber(entry, "restart-deviation").doubleValue();
+			restarts = getNumber(entry, "restarts").intValue();
+			latencyMean = getNumber(entry, "latency-mean").doubleValue();
+			latencyDeviation = getNumber(entry, "latency-deviation").doubleValue();
+			latencies = getNumber(entry, "latencies").intValue();
+		}
+
+		private synchronized Map<String, Object> save(String name) {
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("name", name);
+			entry.put("restart-mean", restartMean);
+			entry.put("restart-deviation", restartDeviation);
+			entry.put("restarts", restarts);
+			entry.put("latency-mean", latencyMean);
+			entry.put("latency-deviation", latencyDeviation);
+			entry.put("latencies", latencies);
+			return entry;
+		}
+
+		private static Number getNumber(Map<?, ?> entry, String key) {
+			Object value = entry.get(key);
+			return value instanceof Number ? (Number) value : 0;
+		}
+
+	}
+
+	private final ConcurrentHashMap<String, Profile> profiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the profile of a server or creates a new one, if there is none yet.
+	 *
+	 * @param server The server.
+	 * @return the Profile of the server.
+	 */
+	public Profile get(ServerInfo server) {
+		Profile profile = profiles.get(server.getName());
+		if (profile == null) {
+			Profile created = new Profile();
+			profile = profiles.putIfAbsent(server.getName(), created);
+			if (profile == null) {
+				profile = created;
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Loads the profiles from a file. Profiles that are already known are replaced.
+	 *
+	 * @param file The file the profiles have been saved to.
+	 * @throws IOException if the file could not be read.
+	 */
+	public void load(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		load(ConfigurationProvider.getProvider(YamlConfiguration.class).load(file));
+	}
+
+	/**
+	 * Loads the profiles from a Configuration. Profiles that are already known are replaced.
+	 *
+	 * @param configuration The Configuration the profiles have been saved to.
+	 */
+	void load(Configuration configuration) {
+		for (Object element : configuration.getList("profiles")) {
+			if (!(element instanceof Map)) {
+				continue;
+			}
+			Map<?, ?> entry = (Map<?, ?>) element;
+			Object name = entry.get("name");
+			if (name == null) {
+				continue;
+			}
+			Profile profile = new Profile();
+			profile.load(entry);
+			profiles.put(name.toString(), profile);
+		}
+	}
+
+	/**
+	 * Saves all profiles to a file.
+	 *
+	 * @param file The file the profiles should be saved to.
+	 * @throws IOException if the file could not be written.
+	 */
+	public void save(File file) throws IOException {
+		ConfigurationProvider.getProvider(YamlConfiguration.class).save(save(), file);
+	}
+
+	/**
+	 * @return a Configuration that contains all profiles.
+	 */
+	Configuration save() {
+		List<Map<String, Object>> entries = new ArrayList<>(profiles.size());
+		for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+			entries.add(entry.getValue().save(entry.getKey()));
+		}
+		Configuration configuration = new Configuration();
+		configuration.set("profiles", entries);
+		return configuration;
+	}
+
+}
@@ -0,0 +1,87 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.net.EncodedPacket;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.protocol.packet.KeepAlive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the reconnecting title and action bar message to all players that are waiting for a reconnect.<br>
+ * All waiting players see the same frame of the dots animation, so each frame only has to be serialized once per
+ * protocol version instead of once per player. The animation runs at its own interval (ui-refresh-time), independent
+ * of the reconnect tries, and each frame also keeps the clients from timing out.
+ */
+public class StatusBroadcaster implements Runnable {
+
+	/**
+	 * The minimum amount of milliseconds between two frames.
+	 */
+	private static final long MIN_INTERVAL = 100;
+
+	/**
+	 * The KeepAlive Packet that is sent with each frame, so that the client won't time out. The client only echoes
+	 * the id, so all players can share the same one.
+	 */
+	private static final EncodedPacket KEEP_ALIVE = new EncodedPacket(new KeepAlive(new Random().nextInt()));
+
+	private final Reconnect instance;
+
+	/**
+	 * The players that are sent the current frame. Only accessed by the retry scheduler thread.
+	 */
+	private final List<UserConnection> waiting = new ArrayList<>();
+	private int frame;
+
+	public StatusBroadcaster(Reconnect instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * Schedules the next frame.
+	 */
+	public void schedule() {
+		instance.getRetryScheduler().schedule(this, getInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (ReconnectTask task : instance.getReconnectTasks()) {
+				if (!task.isDone()) {
+					waiting.add(task.getUser());
+				}
+			}
+			if (!waiting.isEmpty()) {
+				ReconnectConfig config = instance.getConfig();
+				frame++;
+
+				// Send KeepAlive Packet so that the client won't time out.
+				for (UserConnection user : waiting) {
+					KEEP_ALIVE.write(user);
+				}
+
+				// Send fancy Title
+				if (!config.getReconnectingTitle().isEmpty()) {
+					config.getReconnectingTitle().broadcastTitle(waiting, frame);
+				}
+
+				// Send fancy Action Bar Message
+				if (!config.getReconnectingActionBar().isEmpty()) {
+					config.getReconnectingActionBar().broadcastActionBar(waiting, frame);
+				}
+			}
+		} finally {
+			waiting.clear();
+			schedule();
+		}
+	}
+
+	private long getInterval() {
+		return Math.max(instance.getConfig().getUiRefreshMillis(), MIN_INTERVAL);
+	}
+
+}
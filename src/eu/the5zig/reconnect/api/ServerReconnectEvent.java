@@ -1,16 +1,28 @@
 package eu.the5zig.reconnect.api;
 
+import net.md_5.bungee.api.Callback;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
-import net.md_5.bungee.api.plugin.Event;
+import net.md_5.bungee.api.event.AsyncEvent;
+import net.md_5.bungee.api.plugin.Cancellable;
 
-public class ServerReconnectEvent extends Event {
+/**
+ * Called when a player lost the connection to a server and is about to be reconnected.<br>
+ * The event is fired on the Netty thread of the player's server connection. Listeners that need to do anything slow,
+ * e.g. a database lookup, should call {@link #registerIntent(net.md_5.bungee.api.plugin.Plugin)}, do their work on
+ * another thread and call {@link #completeIntent(net.md_5.bungee.api.plugin.Plugin)} afterwards. The player is only
+ * reconnected once all intents have been completed.
+ */
+public class ServerReconnectEvent extends AsyncEvent<ServerReconnectEvent> implements Cancellable {
 
 	private final ProxiedPlayer player;
 	private ServerInfo target;
+	private long delay;
+	private int priority;
 	private boolean cancelled;
 
-	public ServerReconnectEvent(ProxiedPlayer player, ServerInfo target) {
+	public ServerReconnectEvent(ProxiedPlayer player, ServerInfo target, Callback<ServerReconnectEvent> done) {
+		super(done);
 		this.player = player;
 		this.target = target;
 	}
@@ -23,16 +35,58 @@ public class ServerReconnectEvent extends Event {
 		return this.target;
 	}
 
+	/**
+	 * Sets the server the player should be reconnected to. By default, this is the server he lost the connection to.
+	 *
+	 * @param target The server the player should be reconnected to.
+	 */
+	public void setTarget(ServerInfo target) {
+		if (target == null) {
+			throw new NullPointerException("target");
+		}
+		this.target = target;
+	}
+
+	public long getDelay() {
+		return this.delay;
+	}
+
+	/**
+	 * Sets the amount of milliseconds the plugin should wait before the first reconnect try of the player.
+	 *
+	 * @param delay The delay in milliseconds, 0 to try immediately.
+	 */
+	public void setDelay(long delay) {
+		this.delay = Math.max(delay, 0);
+	}
+
+	public int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Sets the priority of the player when the waiting players are released in batches. Players with a higher
+	 * priority are released first, players with the same priority in the order they have been waiting.
+	 *
+	 * @param priority The priority, 0 by default.
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	@Override
 	public boolean isCancelled() {
 		return this.cancelled;
 	}
 
+	@Override
 	public void setCancelled(boolean cancelled) {
 		this.cancelled = cancelled;
 	}
 
 	public String toString() {
-		return "ServerReconnectEvent(player=" + this.getPlayer() + ", target=" + this.getTarget() + ", cancelled=" + this.isCancelled() + ")";
+		return "ServerReconnectEvent(player=" + this.getPlayer() + ", target=" + this.getTarget() + ", delay=" + this.getDelay() + ", priority="
+				+ this.getPriority() + ", cancelled=" + this.isCancelled() + ")";
 	}
 
 }
@@ -2,6 +2,7 @@ package eu.the5zig.reconnect.net;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
+import io.netty.util.AttributeKey;
 import net.md_5.bungee.BungeeServerInfo;
 import net.md_5.bungee.ServerConnector;
 import net.md_5.bungee.UserConnection;
@@ -12,20 +13,25 @@ import net.md_5.bungee.protocol.MinecraftDecoder;
 import net.md_5.bungee.protocol.MinecraftEncoder;
 import net.md_5.bungee.protocol.Protocol;
 
+/**
+ * Initializes the connections to a single server. The initializer is shared by all connections to that server; the
+ * User that is being connected is stored as attribute of the channel.
+ */
 public class BasicChannelInitializer extends ChannelInitializer<Channel> {
 
+	public static final AttributeKey<UserConnection> USER = AttributeKey.valueOf("reconnect-user");
+
 	private final ProxyServer bungee;
-	private final UserConnection user;
 	private final BungeeServerInfo target;
 
-	public BasicChannelInitializer(ProxyServer bungee, UserConnection user, BungeeServerInfo target) {
+	public BasicChannelInitializer(ProxyServer bungee, BungeeServerInfo target) {
 		this.bungee = bungee;
-		this.user = user;
 		this.target = target;
 	}
 
 	@Override
 	protected void initChannel(Channel ch) throws Exception {
+		UserConnection user = ch.attr(USER).get();
 		PipelineUtils.BASE.initChannel(ch);
 		ch.pipeline().addAfter(PipelineUtils.FRAME_DECODER, PipelineUtils.PACKET_DECODER, new MinecraftDecoder(Protocol.HANDSHAKE, false, user.getPendingConnection().getVersion()));
 		ch.pipeline().addAfter(PipelineUtils.FRAME_PREPENDER, PipelineUtils.PACKET_ENCODER, new MinecraftEncoder(Protocol.HANDSHAKE, false, user.getPendingConnection().getVersion()));
@@ -0,0 +1,67 @@
+package eu.the5zig.reconnect.net;
+
+import io.netty.channel.Channel;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The logins of a single player to several members of a racing group at the same time.<br>
+ * Every login is handled by its own BungeeCord ServerConnector. The first one that completes switches the player to its
+ * server, after which the connections to all other servers are closed before they can complete as well. Since all
+ * connections of a player are handled by his own EventLoop, the logins can't complete at the same time. All methods
+ * must be called on that EventLoop.
+ */
+public class ConnectRace {
+
+	private final Map<ServerInfo, Channel> attempts = new HashMap<>();
+	private int failed;
+	private boolean finished;
+
+	/**
+	 * Adds the connection of a login to the race.
+	 *
+	 * @param server  The server the player tries to login to.
+	 * @param channel The Channel of the connection.
+	 */
+	public void add(ServerInfo server, Channel channel) {
+		attempts.put(server, channel);
+	}
+
+	/**
+	 * Records that a connection could not be established.
+	 *
+	 * @return true, if all connections of this race have failed.
+	 */
+	public boolean fail() {
+		return ++failed >= attempts.size();
+	}
+
+	/**
+	 * Ends the race once the player has been switched to a server and closes the connections to all other servers.
+	 * The ServerConnectors of these connections clean up the pending connects of the player themselves.
+	 *
+	 * @param winner The server the player is now connected to.
+	 */
+	public void finish(ServerInfo winner) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		for (Map.Entry<ServerInfo, Channel> attempt : attempts.entrySet()) {
+			if (attempt.getKey() != winner) {
+				attempt.getValue().close();
+			}
+		}
+	}
+
+	/**
+	 * @param server The server the player has been switched to.
+	 * @return true, if the player tried to login to that server in this race.
+	 */
+	public boolean contains(ServerInfo server) {
+		return attempts.containsKey(server);
+	}
+
+}
@@ -0,0 +1,52 @@
+package eu.the5zig.reconnect.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.config.ListenerInfo;
+import net.md_5.bungee.netty.PipelineUtils;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A pre-configured Netty Bootstrap for the connections to a single server.<br>
+ * The address of the server is resolved only once and the channel options and the ChannelInitializer are shared by all
+ * connections, so a reconnect try only has to clone the Bootstrap and set the event loop of the player.
+ */
+public class ConnectTemplate {
+
+	private final Bootstrap bootstrap;
+
+	public ConnectTemplate(ProxyServer bungee, BungeeServerInfo target) {
+		InetSocketAddress address = target.getAddress();
+		if (address.isUnresolved()) {
+			address = new InetSocketAddress(address.getHostString(), address.getPort());
+		}
+		this.bootstrap = new Bootstrap().channel(PipelineUtils.getChannel()).handler(new BasicChannelInitializer(bungee, target)).remoteAddress(address);
+	}
+
+	/**
+	 * Connects a User to the server.
+	 *
+	 * @param user           The User that should be connected.
+	 * @param eventLoop      The EventLoop the connection should be handled by.
+	 * @param connectTimeout The amount of milliseconds after which the connect operation fails.
+	 * @return the ChannelFuture of the connect operation.
+	 */
+	public ChannelFuture connect(UserConnection user, EventLoop eventLoop, int connectTimeout) {
+		Bootstrap b = bootstrap.clone().group(eventLoop).attr(BasicChannelInitializer.USER, user).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+
+		// Windows is bugged, multi homed users will just have to live with random connecting IPs
+		ListenerInfo listener = user.getPendingConnection().getListener();
+		if (listener.isSetLocalAddress() && !PlatformDependent.isWindows()) {
+			b.localAddress(listener.getHost().getHostString(), 0);
+		}
+		return b.connect();
+	}
+
+}
@@ -0,0 +1,80 @@
+package eu.the5zig.reconnect.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.netty.ChannelWrapper;
+import net.md_5.bungee.protocol.DefinedPacket;
+import net.md_5.bungee.protocol.MinecraftEncoder;
+import net.md_5.bungee.protocol.Protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A packet that is serialized only once per protocol version and can then be written to any number of players.<br>
+ * The encoded packet is kept in a ByteBuf; each player gets a retained duplicate of it, which is released again by
+ * the Netty pipeline once it has been written or could not be written.
+ */
+public class EncodedPacket {
+
+	private final DefinedPacket packet;
+	private final ConcurrentHashMap<Integer, ByteBuf> encoded = new ConcurrentHashMap<>();
+
+	public EncodedPacket(DefinedPacket packet) {
+		this.packet = packet;
+	}
+
+	/**
+	 * Writes the packet to a player, encoding it first if no player with the same protocol version received it yet.
+	 *
+	 * @param user The User the packet should be sent to.
+	 */
+	public void write(UserConnection user) {
+		ChannelWrapper ch = user.getCh();
+		if (ch.isClosed()) {
+			return;
+		}
+		// ChannelWrapper silently drops messages once the channel has been closed, which would leak the retained buffer.
+		// Netty itself releases a message that can't be written anymore, so the buffer is written to the channel directly.
+		Channel channel = ch.getHandle();
+		channel.writeAndFlush(get(user.getPendingConnection().getVersion()).duplicate().retain(), channel.voidPromise());
+	}
+
+	private ByteBuf get(int version) {
+		ByteBuf buf = encoded.get(version);
+		if (buf == null) {
+			ByteBuf created = encode(version);
+			buf = encoded.putIfAbsent(version, created);
+			if (buf == null) {
+				buf = created;
+			} else {
+				created.release();
+			}
+		}
+		return buf;
+	}
+
+	/**
+	 * Runs the packet through the same encoder BungeeCord uses for the connection to the client, without the frame
+	 * prepender. Compression, encryption and the length prefix are still applied by each player's own pipeline.
+	 */
+	private ByteBuf encode(int version) {
+		EmbeddedChannel channel = new EmbeddedChannel(new MinecraftEncoder(Protocol.GAME, true, version));
+		channel.writeOutbound(packet);
+		ByteBuf buf = (ByteBuf) channel.readOutbound();
+		channel.finish();
+		return buf;
+	}
+
+	/**
+	 * Releases all encoded buffers. The packet must not be written anymore afterwards.
+	 */
+	public void release() {
+		for (ByteBuf buf : encoded.values()) {
+			buf.release();
+		}
+		encoded.clear();
+	}
+
+}
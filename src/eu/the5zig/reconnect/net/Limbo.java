@@ -0,0 +1,68 @@
+package eu.the5zig.reconnect.net;
+
+import io.netty.buffer.ByteBuf;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.netty.ChannelWrapper;
+import net.md_5.bungee.protocol.DefinedPacket;
+import net.md_5.bungee.protocol.ProtocolConstants;
+import net.md_5.bungee.protocol.packet.Respawn;
+
+/**
+ * A minimal world inside the proxy that players are kept in while they are waiting for a reconnect.<br>
+ * The client is moved into an empty dimension and placed at a fixed position, so it leaves the "Downloading terrain"
+ * screen and keeps displaying titles. No chunks are sent, so the player can't move or fall. As soon as the player is
+ * connected to a server again, the Respawn Packets of the regular server switch move him out of the limbo.
+ */
+public class Limbo {
+
+	/**
+	 * The id of the Player Position And Look Packet of Minecraft 1.8. BungeeCord doesn't know this packet, so it is
+	 * encoded by hand.
+	 */
+	private static final int POSITION_AND_LOOK_ID = 0x08;
+
+	private static final int NETHER = -1;
+	private static final int THE_END = 1;
+	private static final short PEACEFUL = 0;
+	private static final short SPECTATOR = 3;
+
+	/**
+	 * Checks whether the client of a User can be moved into the limbo.
+	 *
+	 * @param user The User that should be checked.
+	 * @return true, if the limbo packets are known for the version of the client.
+	 */
+	public static boolean isSupported(UserConnection user) {
+		return user.getPendingConnection().getVersion() == ProtocolConstants.MINECRAFT_1_8;
+	}
+
+	/**
+	 * Moves a User into the limbo.
+	 *
+	 * @param user The User that should be moved.
+	 */
+	public static void send(UserConnection user) {
+		ChannelWrapper ch = user.getCh();
+		if (ch.isClosed()) {
+			return;
+		}
+
+		// The client only unloads its world if the dimension changes.
+		int dimension = user.getDimension() == THE_END ? NETHER : THE_END;
+		user.unsafe().sendPacket(new Respawn(dimension, PEACEFUL, SPECTATOR, "default"));
+		user.setDimension(dimension);
+
+		ByteBuf position = ch.getHandle().alloc().buffer(34);
+		DefinedPacket.writeVarInt(POSITION_AND_LOOK_ID, position);
+		position.writeDouble(0); // x
+		position.writeDouble(64); // y
+		position.writeDouble(0); // z
+		position.writeFloat(0); // yaw
+		position.writeFloat(0); // pitch
+		position.writeByte(0); // all values are absolute
+		// Written to the channel directly, since ChannelWrapper would drop (and leak) the buffer if the channel has been
+		// closed in the meantime, while Netty releases it.
+		ch.getHandle().writeAndFlush(position, ch.getHandle().voidPromise());
+	}
+
+}
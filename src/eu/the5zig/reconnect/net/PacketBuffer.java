@@ -0,0 +1,138 @@
+package eu.the5zig.reconnect.net;
+
+import io.netty.buffer.ByteBuf;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * The chat messages, commands and plugin messages a single player sent while he was waiting for a reconnect.<br>
+ * The payloads are kept in direct buffers, so they don't take up heap space. The buffer works like a ring: if it is
+ * full, the oldest packet is dropped. All memory is accounted by the {@link PacketBufferManager}.
+ */
+public class PacketBuffer {
+
+	private static class Entry {
+
+		/**
+		 * The channel of a plugin message, or null if the entry is a chat message or command.
+		 */
+		private final String channel;
+		private final ByteBuf data;
+
+		private Entry(String channel, ByteBuf data) {
+			this.channel = channel;
+			this.data = data;
+		}
+
+		private boolean isDuplicate(String channel, byte[] data) {
+			if (channel == null ? this.channel != null : !channel.equals(this.channel)) {
+				return false;
+			}
+			if (this.data.readableBytes() != data.length) {
+				return false;
+			}
+			int index = this.data.readerIndex();
+			for (int i = 0; i < data.length; i++) {
+				if (this.data.getByte(index + i) != data[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private byte[] toArray() {
+			byte[] array = new byte[data.readableBytes()];
+			data.getBytes(data.readerIndex(), array);
+			return array;
+		}
+
+	}
+
+	private final PacketBufferManager manager;
+	private final ServerInfo target;
+	private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+	private int bytes;
+
+	PacketBuffer(PacketBufferManager manager, ServerInfo target) {
+		this.manager = manager;
+		this.target = target;
+	}
+
+	/**
+	 * Adds a packet to the buffer. Packets that are equal to the last buffered one are ignored, the oldest packets are
+	 * dropped if the buffer is full and the packet is dropped if the memory limit of all buffers has been reached.
+	 *
+	 * @param channel    The channel of the plugin message, or null if it's a chat message or command.
+	 * @param data       The payload.
+	 * @param maxPackets The maximum amount of packets of this buffer.
+	 * @param maxBytes   The maximum amount of bytes of this buffer.
+	 */
+	synchronized void add(String channel, byte[] data, int maxPackets, int maxBytes) {
+		if (data.length > maxBytes) {
+			return;
+		}
+		Entry last = entries.peekLast();
+		if (last != null && last.isDuplicate(channel, data)) {
+			return;
+		}
+		while (!entries.isEmpty() && (entries.size() >= maxPackets || bytes + data.length > maxBytes)) {
+			release(entries.pollFirst());
+		}
+		if (!manager.reserve(data.length)) {
+			return;
+		}
+		ByteBuf buf = manager.allocate(data.length);
+		buf.writeBytes(data);
+		entries.addLast(new Entry(channel, buf));
+		bytes += data.length;
+	}
+
+	/**
+	 * Sends all buffered packets to the current server of the player, in the order they have been buffered, and
+	 * releases them afterwards.
+	 *
+	 * @param player The player whose packets should be sent.
+	 */
+	synchronized void replay(ProxiedPlayer player) {
+		Entry entry;
+		while ((entry = entries.pollFirst()) != null) {
+			try {
+				if (entry.channel == null) {
+					player.chat(new String(entry.toArray(), StandardCharsets.UTF_8));
+				} else {
+					player.getServer().sendData(entry.channel, entry.toArray());
+				}
+			} finally {
+				release(entry);
+			}
+		}
+	}
+
+	/**
+	 * Releases all buffered packets without sending them.
+	 */
+	synchronized void clear() {
+		Entry entry;
+		while ((entry = entries.pollFirst()) != null) {
+			release(entry);
+		}
+	}
+
+	private void release(Entry entry) {
+		int length = entry.data.readableBytes();
+		entry.data.release();
+		bytes -= length;
+		manager.free(length);
+	}
+
+	/**
+	 * @return the server the player is waiting for. The packets are only replayed on this server.
+	 */
+	public ServerInfo getTarget() {
+		return target;
+	}
+
+}
@@ -0,0 +1,130 @@
+package eu.the5zig.reconnect.net;
+
+import eu.the5zig.reconnect.Reconnect;
+import eu.the5zig.reconnect.ReconnectConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the {@link PacketBuffer} of each player that is waiting for a reconnect and accounts the memory of all of them,
+ * so that even an outage with thousands of chatting players can't take up more than the configured amount of memory.
+ */
+public class PacketBufferManager {
+
+	private final Reconnect instance;
+	private final ConcurrentHashMap<UUID, PacketBuffer> buffers = new ConcurrentHashMap<>();
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	public PacketBufferManager(Reconnect instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * Buffers a packet of a player, if he is waiting for a reconnect or already has got a buffer that hasn't been
+	 * replayed yet.
+	 *
+	 * @param uuid    The UniqueId of the player.
+	 * @param target  The server the player is waiting for, or null if he isn't waiting for a reconnect.
+	 * @param channel The channel of the plugin message, or null if it's a chat message or command.
+	 * @param data    The payload.
+	 * @return true, if the packet has been consumed by the buffer and must not be sent to the server anymore.
+	 */
+	public boolean capture(UUID uuid, ServerInfo target, String channel, byte[] data) {
+		ReconnectConfig config = instance.getConfig();
+		if (!config.isBufferEnabled()) {
+			return false;
+		}
+		PacketBuffer buffer = buffers.get(uuid);
+		if (buffer == null) {
+			if (target == null) {
+				return false;
+			}
+			PacketBuffer created = new PacketBuffer(this, target);
+			buffer = buffers.putIfAbsent(uuid, created);
+			if (buffer == null) {
+				buffer = created;
+			}
+		}
+		// Even if the buffer is full, the packet is consumed, since the server it was meant for is gone anyway.
+		buffer.add(channel, data, config.getBufferMaxPackets(), config.getBufferMaxBytes());
+		return true;
+	}
+
+	/**
+	 * Sends the buffered packets of a player to his new server, if it is the server he has been waiting for, and
+	 * removes his buffer. If he has been moved to another server, the packets are dropped.
+	 *
+	 * @param player The player that has switched the server.
+	 * @param raced  true, if the player won a race to the new server, which replaces the one he has been waiting for.
+	 */
+	public void replay(ProxiedPlayer player, boolean raced) {
+		PacketBuffer buffer = buffers.remove(player.getUniqueId());
+		if (buffer == null) {
+			return;
+		}
+		if (player.getServer() != null && (raced || player.getServer().getInfo() == buffer.getTarget())) {
+			buffer.replay(player);
+		} else {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Drops the buffered packets of a player, e.g. because he left the proxy.
+	 *
+	 * @param uuid The UniqueId of the player.
+	 */
+	public void discard(UUID uuid) {
+		PacketBuffer buffer = buffers.remove(uuid);
+		if (buffer != null) {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * @param uuid The UniqueId of the player.
+	 * @return true, if the player has got a buffer that hasn't been replayed yet.
+	 */
+	public boolean isBuffering(UUID uuid) {
+		return buffers.containsKey(uuid);
+	}
+
+	/**
+	 * Reserves memory for a packet.
+	 *
+	 * @return true, if the memory limit of all buffers hasn't been reached yet.
+	 */
+	boolean reserve(int length) {
+		long max = instance.getConfig().getBufferMaxTotalBytes();
+		long current;
+		do {
+			current = totalBytes.get();
+			if (current + length > max) {
+				return false;
+			}
+		} while (!totalBytes.compareAndSet(current, current + length));
+		return true;
+	}
+
+	void free(int length) {
+		totalBytes.addAndGet(-length);
+	}
+
+	ByteBuf allocate(int length) {
+		return PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+	}
+
+	/**
+	 * @return the amount of bytes that are currently buffered for all players.
+	 */
+	public long getTotalBytes() {
+		return totalBytes.get();
+	}
+
+}
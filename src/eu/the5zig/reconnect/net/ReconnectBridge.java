@@ -1,11 +1,15 @@
 package eu.the5zig.reconnect.net;
 
 import com.google.common.base.Objects;
+import eu.the5zig.reconnect.KickClassifier.Action;
+import eu.the5zig.reconnect.KickClassifier.KickClass;
+import eu.the5zig.reconnect.PlannedRestart;
 import eu.the5zig.reconnect.Reconnect;
+import eu.the5zig.reconnect.api.ServerReconnectEvent;
 import net.md_5.bungee.ServerConnection;
 import net.md_5.bungee.UserConnection;
 import net.md_5.bungee.Util;
-import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.Callback;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.config.ServerInfo;
@@ -35,7 +39,7 @@ public class ReconnectBridge extends DownstreamBridge {
 	}
 
 	@Override
-	public void exception(Throwable t) throws Exception {
+	public void exception(final Throwable t) throws Exception {
 		// Usually, BungeeCord would reconnect the Player to the fallback server or kick him if not
 		// Fallback Server is available, when an Exception between the BungeeCord and the Minecraft Server
 		// occurs. We override this Method so that we can try to reconnect the client instead.
@@ -48,56 +52,66 @@ public class ReconnectBridge extends DownstreamBridge {
 		server.setObsolete(true);
 
 		// Fire ServerReconnectEvent and give plugins the possibility to cancel server reconnecting.
-		if (!instance.fireServerReconnectEvent(user, server)) {
-			// Invoke default behaviour if event has been cancelled.
+		instance.fireServerReconnectEvent(user, server, new Callback<ServerReconnectEvent>() {
+			@Override
+			public void done(ServerReconnectEvent event, Throwable error) {
+				if (event.isCancelled()) {
+					// Invoke default behaviour if event has been cancelled.
 
-			ServerInfo def = bungee.getServerInfo(user.getPendingConnection().getListener().getFallbackServer());
-			if (server.getInfo() != def) {
-				user.connectNow(def);
-				user.sendMessage(bungee.getTranslation("server_went_down"));
-			} else {
-				user.disconnect(Util.exception(t));
+					ServerInfo def = instance.getFallbackServer(user, server.getInfo());
+					if (server.getInfo() != def) {
+						instance.connectToServer(user, def);
+						user.sendMessage(bungee.getTranslation("server_went_down"));
+					} else {
+						user.disconnect(Util.exception(t));
+					}
+				} else {
+					// Otherwise, reconnect the User if he is still online.
+					instance.reconnectIfOnline(user, server, event);
+				}
 			}
-		} else {
-			// Otherwise, reconnect the User if he is still online.
-			instance.reconnectIfOnline(user, server);
-		}
+		});
 	}
 
 	@Override
 	public void handle(Kick kick) throws Exception {
 		// This method is called whenever a Kick-Packet is sent from the Minecraft Server to the Minecraft Client.
 
-		ServerInfo def = bungee.getServerInfo(user.getPendingConnection().getListener().getFallbackServer());
+		ServerInfo def = instance.getFallbackServer(user, server.getInfo());
 		if (Objects.equal(server.getInfo(), def)) {
 			def = null;
 		}
 		// Call ServerKickEvent
-		ServerKickEvent event = bungee.getPluginManager().callEvent(new ServerKickEvent(user, server.getInfo(), ComponentSerializer.parse(kick.getMessage()), def, ServerKickEvent.State.CONNECTED));
+		BaseComponent[] reason = ComponentSerializer.parse(kick.getMessage());
+		final ServerKickEvent event = bungee.getPluginManager().callEvent(new ServerKickEvent(user, server.getInfo(), reason, def, ServerKickEvent.State.CONNECTED));
 		if (event.isCancelled() && event.getCancelServer() != null) {
-			user.connectNow(event.getCancelServer());
+			instance.connectToServer(user, event.getCancelServer());
 		} else {
-			String kickMessage = ChatColor.stripColor(BaseComponent.toLegacyText(ComponentSerializer.parse(kick.getMessage()))); // needs to be parsed like that...
-			// doReconnect indicates whether the player should be reconnected or not after he has been kicked. Only if the kick reason matches the one that has been
-			// pre-defined on the config, we allow him to reconnect.
-			boolean doReconnect = false;
-			if (instance.getShutdownMessage() != null && instance.getShutdownMessage().equals(kickMessage)) {
-				doReconnect = true;
-			} else if (instance.getShutdownMessage() == null && instance.getShutdownPattern() != null) {
-				try {
-					doReconnect = instance.getShutdownPattern().matcher(kickMessage).matches();
-				} catch (Exception e) {
-					instance.getLogger().warning("Could not match shutdown-pattern " + instance.getShutdownPattern().pattern());
-				}
-			}
-
-			// As always, we fire a ServerReconnectEvent and give plugins the possibility to cancel server reconnecting.
-			if (!doReconnect || !instance.fireServerReconnectEvent(user, server)) {
-				// Invoke default behaviour if event has been cancelled and disconnect the player.
+			// The classifier decides by the kick message whether the player should be reconnected, moved to the fallback server
+			// or disconnected. Since all players usually get the same message, the result is cached. If the server has been
+			// announced to restart, all kicks are part of the restart and the message doesn't matter.
+			PlannedRestart restart = instance.getPlannedRestart(server.getInfo());
+			final KickClass kickClass = restart != null ? restart.getKickClass() : instance.getConfig().getKickClassifier().classify(kick.getMessage(), reason);
+			if (kickClass.getAction() == Action.FALLBACK && def != null) {
+				instance.connectToServer(user, def);
+				user.sendMessage(bungee.getTranslation("server_went_down"));
+			} else if (kickClass.getAction() != Action.RECONNECT) {
 				user.disconnect0(event.getKickReasonComponent());
 			} else {
-				// Otherwise, reconnect the User if he is still online.
-				instance.reconnectIfOnline(user, server);
+				// As always, we fire a ServerReconnectEvent and give plugins the possibility to cancel server reconnecting.
+				// Listeners may complete it asynchronously, so the server connection is marked obsolete below before they are done.
+				instance.fireServerReconnectEvent(user, server, new Callback<ServerReconnectEvent>() {
+					@Override
+					public void done(ServerReconnectEvent reconnectEvent, Throwable error) {
+						if (reconnectEvent.isCancelled()) {
+							// Invoke default behaviour if event has been cancelled and disconnect the player.
+							user.disconnect0(event.getKickReasonComponent());
+						} else {
+							// Otherwise, reconnect the User if he is still online.
+							instance.reconnectIfOnline(user, server, kickClass, reconnectEvent);
+						}
+					}
+				});
 			}
 		}
 		server.setObsolete(true);
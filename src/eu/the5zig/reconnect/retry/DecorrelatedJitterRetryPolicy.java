@@ -0,0 +1,28 @@
+package eu.the5zig.reconnect.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks a random delay between the base delay and three times the previous delay, capped at the maximum delay. The
+ * delays grow like an exponential backoff, but the reconnect tries of different players spread out over time.
+ */
+public class DecorrelatedJitterRetryPolicy implements RetryPolicy {
+
+	private final long baseDelay;
+	private final long maxDelay;
+
+	public DecorrelatedJitterRetryPolicy(long baseDelay, long maxDelay) {
+		this.baseDelay = Math.max(baseDelay, MIN_DELAY);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+	}
+
+	@Override
+	public long nextDelay(int tries, long previousDelay) {
+		long upper = Math.max(previousDelay, baseDelay) * 3;
+		if (upper <= baseDelay) {
+			return baseDelay;
+		}
+		return Math.min(maxDelay, baseDelay + ThreadLocalRandom.current().nextLong(upper - baseDelay));
+	}
+
+}
@@ -0,0 +1,28 @@
+package eu.the5zig.reconnect.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Doubles the delay after each reconnect try until the maximum delay has been reached. A random jitter of up to a
+ * quarter of the delay is subtracted, so that players who were kicked at the same time don't retry in lock-step.
+ */
+public class ExponentialRetryPolicy implements RetryPolicy {
+
+	private final long baseDelay;
+	private final long maxDelay;
+
+	public ExponentialRetryPolicy(long baseDelay, long maxDelay) {
+		this.baseDelay = Math.max(baseDelay, MIN_DELAY);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+	}
+
+	@Override
+	public long nextDelay(int tries, long previousDelay) {
+		long delay = baseDelay << Math.min(tries, 30);
+		if (delay <= 0 || delay > maxDelay) {
+			delay = maxDelay;
+		}
+		return Math.max(delay - ThreadLocalRandom.current().nextLong(delay / 4 + 1), MIN_DELAY);
+	}
+
+}
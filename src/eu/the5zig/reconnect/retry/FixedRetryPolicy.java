@@ -0,0 +1,19 @@
+package eu.the5zig.reconnect.retry;
+
+/**
+ * Waits the same amount of time before each reconnect try.
+ */
+public class FixedRetryPolicy implements RetryPolicy {
+
+	private final long delay;
+
+	public FixedRetryPolicy(long delay) {
+		this.delay = Math.max(delay, MIN_DELAY);
+	}
+
+	@Override
+	public long nextDelay(int tries, long previousDelay) {
+		return delay;
+	}
+
+}
@@ -0,0 +1,23 @@
+package eu.the5zig.reconnect.retry;
+
+/**
+ * Decides how long a reconnect task should wait before making its next reconnect try.
+ */
+public interface RetryPolicy {
+
+	/**
+	 * The minimum amount of milliseconds between two reconnect tries, so that a reconnect-time of 0 can't make the
+	 * tries spin on the EventLoop.
+	 */
+	long MIN_DELAY = 100;
+
+	/**
+	 * Calculates the delay until the next reconnect try.
+	 *
+	 * @param tries         The amount of reconnect tries that have already been made.
+	 * @param previousDelay The delay that has been used before the last try or 0, if this is the first one.
+	 * @return the amount of milliseconds to wait before the next try.
+	 */
+	long nextDelay(int tries, long previousDelay);
+
+}
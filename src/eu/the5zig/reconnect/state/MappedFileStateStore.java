@@ -0,0 +1,228 @@
+package eu.the5zig.reconnect.state;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A state store that is backed by a memory-mapped file, so that the state survives a proxy restart.<br>
+ * The file is an open-addressing hash table with fixed-size records, indexed by the UniqueId of the player. Since the
+ * position of a record only depends on the UniqueId, no index has to be rebuilt when the file is opened. Writes go to
+ * the page cache and are flushed by the operating system, so putting a state doesn't block on disk I/O. The file must
+ * only be used by a single proxy at a time.<br>
+ * Removed records are marked as deleted, since the records behind them might only be found by probing past them. As
+ * soon as no record can be behind a deleted slot anymore, it becomes empty again, so that a lookup of a player who
+ * isn't waiting still stops at the next empty slot after many players have come and gone.
+ */
+public class MappedFileStateStore implements ReconnectStateStore {
+
+	private static final int MAGIC = 0x52435354; // "RCST"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	private static final byte EMPTY = 0;
+	private static final byte USED = 1;
+	private static final byte DELETED = 2;
+
+	/**
+	 * The maximum amount of bytes of a server name. Longer names aren't stored.
+	 */
+	private static final int MAX_NAME_LENGTH = 64;
+	/**
+	 * status (1) + uuid (16) + start time (8) + expiration time (8) + name length (1) + name (64), padded to a power of two.
+	 */
+	private static final int RECORD_SIZE = 128;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+
+	/**
+	 * Opens or creates the state file. If the file has been created with another capacity or version, it is cleared,
+	 * otherwise all expired records are removed.
+	 *
+	 * @param path     The state file.
+	 * @param capacity The maximum amount of players whose state can be stored.
+	 * @throws IOException if the file could not be opened or mapped.
+	 */
+	public MappedFileStateStore(File path, int capacity) throws IOException {
+		this.capacity = capacity;
+		this.file = new RandomAccessFile(path, "rw");
+		long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+		boolean valid = file.length() == size;
+		file.setLength(size);
+		this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+		if (!valid || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity) {
+			for (int i = 0; i < capacity; i++) {
+				buffer.put(offset(i), EMPTY);
+			}
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, capacity);
+		} else {
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < capacity; i++) {
+				int offset = offset(i);
+				byte status = buffer.get(offset);
+				if (status == DELETED || status == USED && buffer.getLong(offset + 25) <= now) {
+					delete(i);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void put(UUID uuid, ReconnectState state) {
+		byte[] name = state.getServer().getBytes(StandardCharsets.UTF_8);
+		if (name.length > MAX_NAME_LENGTH) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int free = -1;
+		int slot = find(uuid);
+		if (slot < 0) {
+			// Reuse the first slot that is either free or holds an expired state.
+			int start = index(uuid);
+			for (int i = 0; i < capacity; i++) {
+				int candidate = (start + i) % capacity;
+				int offset = offset(candidate);
+				byte status = buffer.get(offset);
+				if (status != USED || buffer.getLong(offset + 25) <= now) {
+					free = candidate;
+					break;
+				}
+			}
+			if (free < 0) {
+				// The store is full of players that are still waiting, so this one just can't be routed back.
+				return;
+			}
+			slot = free;
+		}
+
+		int offset = offset(slot);
+		// The slot may still hold another (expired) record or an older state of this player. Mark it as deleted first, so
+		// that a crash while the fields are written never leaves a used record that mixes both.
+		buffer.put(offset, DELETED);
+		buffer.putLong(offset + 1, uuid.getMostSignificantBits());
+		buffer.putLong(offset + 9, uuid.getLeastSignificantBits());
+		buffer.putLong(offset + 17, state.getStartTime());
+		buffer.putLong(offset + 25, state.getExpiresAt());
+		buffer.put(offset + 33, (byte) name.length);
+		for (int i = 0; i < name.length; i++) {
+			buffer.put(offset + 34 + i, name[i]);
+		}
+		// Write the status last, so that a half-written record is never read back as used after a crash.
+		buffer.put(offset, USED);
+	}
+
+	@Override
+	public synchronized ReconnectState get(UUID uuid) {
+		int slot = find(uuid);
+		if (slot < 0) {
+			return null;
+		}
+		int offset = offset(slot);
+		long expiresAt = buffer.getLong(offset + 25);
+		if (expiresAt <= System.currentTimeMillis()) {
+			delete(slot);
+			return null;
+		}
+		int length = buffer.get(offset + 33) & 0xFF;
+		if (length > MAX_NAME_LENGTH) {
+			// The record is corrupt, e.g. because the file has been modified by something else.
+			delete(slot);
+			return null;
+		}
+		byte[] name = new byte[length];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buffer.get(offset + 34 + i);
+		}
+		return new ReconnectState(new String(name, StandardCharsets.UTF_8), buffer.getLong(offset + 17), expiresAt);
+	}
+
+	@Override
+	public synchronized void remove(UUID uuid) {
+		int slot = find(uuid);
+		if (slot >= 0) {
+			delete(slot);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		buffer.force();
+		try {
+			file.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/**
+	 * Probes the table for the record of a player. Probing stops at the first empty slot, deleted slots are skipped.
+	 *
+	 * @return the slot of the record, or -1 if there is none.
+	 */
+	private int find(UUID uuid) {
+		long most = uuid.getMostSignificantBits();
+		long least = uuid.getLeastSignificantBits();
+		int start = index(uuid);
+		for (int i = 0; i < capacity; i++) {
+			int slot = (start + i) % capacity;
+			int offset = offset(slot);
+			byte status = buffer.get(offset);
+			if (status == EMPTY) {
+				return -1;
+			}
+			if (status == USED && buffer.getLong(offset + 1) == most && buffer.getLong(offset + 9) == least) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the record of a slot. If the next slot is empty, no probe has to pass this slot anymore, so it becomes
+	 * empty as well, along with all deleted slots right before it.
+	 */
+	private void delete(int slot) {
+		if (buffer.get(offset((slot + 1) % capacity)) != EMPTY) {
+			buffer.put(offset(slot), DELETED);
+			return;
+		}
+		buffer.put(offset(slot), EMPTY);
+		for (int i = 1; i < capacity; i++) {
+			int offset = offset((slot - i + capacity) % capacity);
+			if (buffer.get(offset) != DELETED) {
+				break;
+			}
+			buffer.put(offset, EMPTY);
+		}
+	}
+
+	/**
+	 * @return the amount of deleted slots, which every probe has to skip.
+	 */
+	synchronized int getDeletedCount() {
+		int count = 0;
+		for (int i = 0; i < capacity; i++) {
+			if (buffer.get(offset(i)) == DELETED) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private int index(UUID uuid) {
+		return (uuid.hashCode() & Integer.MAX_VALUE) % capacity;
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * RECORD_SIZE;
+	}
+
+}
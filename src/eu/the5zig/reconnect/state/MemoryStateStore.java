@@ -0,0 +1,55 @@
+package eu.the5zig.reconnect.state;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default state store, which keeps the state in memory. It survives neither a proxy restart nor is it shared with
+ * other proxies, but it still routes players back who left and rejoined the same proxy while waiting.
+ */
+public class MemoryStateStore implements ReconnectStateStore {
+
+	/**
+	 * The amount of puts after which expired states of players that never came back are removed.
+	 */
+	private static final int PURGE_INTERVAL = 1024;
+
+	private final ConcurrentHashMap<UUID, ReconnectState> states = new ConcurrentHashMap<>();
+	private final AtomicInteger puts = new AtomicInteger();
+
+	@Override
+	public void put(UUID uuid, ReconnectState state) {
+		states.put(uuid, state);
+		if (puts.incrementAndGet() % PURGE_INTERVAL == 0) {
+			long now = System.currentTimeMillis();
+			for (Iterator<ReconnectState> iterator = states.values().iterator(); iterator.hasNext(); ) {
+				if (iterator.next().isExpired(now)) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	@Override
+	public ReconnectState get(UUID uuid) {
+		ReconnectState state = states.get(uuid);
+		if (state != null && state.isExpired(System.currentTimeMillis())) {
+			states.remove(uuid, state);
+			return null;
+		}
+		return state;
+	}
+
+	@Override
+	public void remove(UUID uuid) {
+		states.remove(uuid);
+	}
+
+	@Override
+	public void close() {
+		states.clear();
+	}
+
+}
@@ -0,0 +1,48 @@
+package eu.the5zig.reconnect.state;
+
+/**
+ * The reconnect state of a single player: the server he is waiting for and how long he should be routed back to it.
+ * Instances are immutable.
+ */
+public class ReconnectState {
+
+	private final String server;
+	private final long startTime;
+	private final long expiresAt;
+
+	/**
+	 * @param server    The name of the server the player is waiting for.
+	 * @param startTime The time in milliseconds at which the player started waiting.
+	 * @param expiresAt The time in milliseconds after which the state should be ignored.
+	 */
+	public ReconnectState(String server, long startTime, long expiresAt) {
+		this.server = server;
+		this.startTime = startTime;
+		this.expiresAt = expiresAt;
+	}
+
+	public String getServer() {
+		return server;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	/**
+	 * @param now The current time in milliseconds.
+	 * @return true, if the state should be ignored.
+	 */
+	public boolean isExpired(long now) {
+		return now >= expiresAt;
+	}
+
+	public String toString() {
+		return "ReconnectState(server=" + server + ", startTime=" + startTime + ", expiresAt=" + expiresAt + ")";
+	}
+
+}
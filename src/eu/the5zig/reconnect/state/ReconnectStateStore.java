@@ -0,0 +1,43 @@
+package eu.the5zig.reconnect.state;
+
+import java.util.UUID;
+
+/**
+ * Stores which players are waiting for which server, so that a player who comes back through another proxy or after
+ * a proxy restart can be sent straight back to the server he was waiting for.<br>
+ * The plugin ships with a store that only lives in memory and one that is backed by a memory-mapped file. Stores that
+ * share the state between several proxies, e.g. backed by Redis, can be installed by other plugins with
+ * {@link eu.the5zig.reconnect.Reconnect#setStateStore(ReconnectStateStore)}. Implementations must be thread-safe and
+ * should not block, since they are called from the Netty threads.
+ */
+public interface ReconnectStateStore {
+
+	/**
+	 * Stores the state of a player, replacing his previous state.
+	 *
+	 * @param uuid  The UniqueId of the player.
+	 * @param state The state of the player.
+	 */
+	void put(UUID uuid, ReconnectState state);
+
+	/**
+	 * Gets the state of a player.
+	 *
+	 * @param uuid The UniqueId of the player.
+	 * @return the state of the player, or null if there is none or it has expired.
+	 */
+	ReconnectState get(UUID uuid);
+
+	/**
+	 * Removes the state of a player, e.g. because he has been reconnected.
+	 *
+	 * @param uuid The UniqueId of the player.
+	 */
+	void remove(UUID uuid);
+
+	/**
+	 * Releases all resources of the store. It must not be used anymore afterwards.
+	 */
+	void close();
+
+}
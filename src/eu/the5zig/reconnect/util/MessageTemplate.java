@@ -0,0 +1,201 @@
+package eu.the5zig.reconnect.util;
+
+import eu.the5zig.reconnect.net.EncodedPacket;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.Title;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.chat.ComponentSerializer;
+import net.md_5.bungee.protocol.ProtocolConstants;
+import net.md_5.bungee.protocol.packet.Chat;
+
+/**
+ * An immutable message from the config that has been compiled once when the config was loaded.<br>
+ * If the message contains the {%dots%} variable, a separate frame is rendered for each state of the dots animation,
+ * so that sending the message to a player neither translates color codes nor builds any strings or packets.<br>
+ * Each frame is also encoded only once per protocol version, see {@link EncodedPacket}.
+ */
+public class MessageTemplate {
+
+	public static final String DOTS_VARIABLE = "{%dots%}";
+	/**
+	 * The amount of frames of the dots animation (no dot, one dot, two dots and three dots).
+	 */
+	public static final int DOTS_FRAMES = 4;
+
+	private static final TextComponent EMPTY = new TextComponent("");
+
+	private final String text;
+	private final Title[] titles;
+	private final Chat[] actionBars;
+	private final EncodedPacket[][] encodedTitles;
+	private final EncodedPacket[] encodedActionBars;
+
+	private MessageTemplate(String text, Title[] titles, Chat[] actionBars, EncodedPacket[][] encodedTitles, EncodedPacket[] encodedActionBars) {
+		this.text = text;
+		this.titles = titles;
+		this.actionBars = actionBars;
+		this.encodedTitles = encodedTitles;
+		this.encodedActionBars = encodedActionBars;
+	}
+
+	/**
+	 * Compiles a message from the config.
+	 *
+	 * @param message The message, with '&amp;' as color code character.
+	 * @param fadeIn  The fade in time in ticks, if the message is sent as title.
+	 * @param stay    The stay time in ticks, if the message is sent as title.
+	 * @param fadeOut The fade out time in ticks, if the message is sent as title.
+	 * @return the compiled MessageTemplate.
+	 */
+	public static MessageTemplate compile(String message, int fadeIn, int stay, int fadeOut) {
+		String text = message == null ? "" : ChatColor.translateAlternateColorCodes('&', message);
+		int frames = text.contains(DOTS_VARIABLE) ? DOTS_FRAMES : 1;
+
+		Title[] titles = new Title[frames];
+		Chat[] actionBars = new Chat[frames];
+		EncodedPacket[][] encodedTitles = new EncodedPacket[frames][];
+		EncodedPacket[] encodedActionBars = new EncodedPacket[frames];
+		String dots = "";
+		for (int i = 0; i < frames; i++) {
+			String frame = text.replace(DOTS_VARIABLE, dots);
+
+			Title title = ProxyServer.getInstance().createTitle();
+			title.title(EMPTY);
+			title.subTitle(new TextComponent(frame));
+			title.stay(stay);
+			title.fadeIn(fadeIn);
+			title.fadeOut(fadeOut);
+			titles[i] = title;
+
+			// Action bar doesn't display the new JSON formattings, so we send it as legacy text like BungeeCord does.
+			actionBars[i] = createChatPacket(ChatMessageType.ACTION_BAR, new TextComponent(frame));
+
+			encodedTitles[i] = createTitlePackets(new TextComponent(frame), fadeIn, stay, fadeOut);
+			encodedActionBars[i] = new EncodedPacket(actionBars[i]);
+
+			dots += ".";
+		}
+		return new MessageTemplate(text, titles, actionBars, encodedTitles, encodedActionBars);
+	}
+
+	/**
+	 * Creates the packets a Title consists of, in the same order BungeeCord sends them.
+	 */
+	private static EncodedPacket[] createTitlePackets(BaseComponent subTitle, int fadeIn, int stay, int fadeOut) {
+		net.md_5.bungee.protocol.packet.Title times = new net.md_5.bungee.protocol.packet.Title();
+		times.setAction(net.md_5.bungee.protocol.packet.Title.Action.TIMES);
+		times.setFadeIn(fadeIn);
+		times.setStay(stay);
+		times.setFadeOut(fadeOut);
+
+		net.md_5.bungee.protocol.packet.Title subTitlePacket = new net.md_5.bungee.protocol.packet.Title();
+		subTitlePacket.setAction(net.md_5.bungee.protocol.packet.Title.Action.SUBTITLE);
+		subTitlePacket.setText(ComponentSerializer.toString(subTitle));
+
+		net.md_5.bungee.protocol.packet.Title title = new net.md_5.bungee.protocol.packet.Title();
+		title.setAction(net.md_5.bungee.protocol.packet.Title.Action.TITLE);
+		title.setText(ComponentSerializer.toString(EMPTY));
+
+		return new EncodedPacket[] { new EncodedPacket(times), new EncodedPacket(subTitlePacket), new EncodedPacket(title) };
+	}
+
+	/**
+	 * Serializes a message into a Chat packet that can be sent to any number of players.
+	 *
+	 * @param position The position the message should be displayed at.
+	 * @param message  The message that should be sent.
+	 * @return the Chat packet.
+	 */
+	public static Chat createChatPacket(ChatMessageType position, BaseComponent message) {
+		return new Chat(ComponentSerializer.toString(message), (byte) position.ordinal());
+	}
+
+	/**
+	 * Sends the message as subtitle to a group of players. Each frame is serialized only once per protocol version,
+	 * no matter how many players receive it.
+	 *
+	 * @param users The players the title should be sent to.
+	 * @param frame The frame of the dots animation.
+	 */
+	public void broadcastTitle(Iterable<UserConnection> users, int frame) {
+		EncodedPacket[] packets = encodedTitles[frame % encodedTitles.length];
+		for (UserConnection user : users) {
+			if (user.getPendingConnection().getVersion() < ProtocolConstants.MINECRAFT_1_8) {
+				// Older clients don't know titles, let BungeeCord decide what to do.
+				sendTitle(user, frame);
+				continue;
+			}
+			for (EncodedPacket packet : packets) {
+				packet.write(user);
+			}
+		}
+	}
+
+	/**
+	 * Sends the message as action bar message to a group of players. Each frame is serialized only once per protocol
+	 * version, no matter how many players receive it.
+	 *
+	 * @param users The players the action bar message should be sent to.
+	 * @param frame The frame of the dots animation.
+	 */
+	public void broadcastActionBar(Iterable<UserConnection> users, int frame) {
+		EncodedPacket packet = encodedActionBars[frame % encodedActionBars.length];
+		for (UserConnection user : users) {
+			packet.write(user);
+		}
+	}
+
+	/**
+	 * Releases the encoded packets of this message. It must not be sent anymore afterwards.
+	 */
+	public void release() {
+		for (EncodedPacket[] packets : encodedTitles) {
+			for (EncodedPacket packet : packets) {
+				packet.release();
+			}
+		}
+		for (EncodedPacket packet : encodedActionBars) {
+			packet.release();
+		}
+	}
+
+	/**
+	 * @return true, if the message is empty and should not be sent at all.
+	 */
+	public boolean isEmpty() {
+		return text.isEmpty();
+	}
+
+	/**
+	 * @return the translated message, still containing the {%dots%} variable.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Sends the message as subtitle to a player.
+	 *
+	 * @param player The player the title should be sent to.
+	 * @param frame  The frame of the dots animation.
+	 */
+	public void sendTitle(ProxiedPlayer player, int frame) {
+		titles[frame % titles.length].send(player);
+	}
+
+	/**
+	 * Sends the message as action bar message to a player.
+	 *
+	 * @param player The player the action bar message should be sent to.
+	 * @param frame  The frame of the dots animation.
+	 */
+	public void sendActionBar(ProxiedPlayer player, int frame) {
+		player.unsafe().sendPacket(actionBars[frame % actionBars.length]);
+	}
+
+}
@@ -0,0 +1,62 @@
+package eu.the5zig.reconnect.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules the server probes and status broadcasts on a single hashed timing wheel.<br>
+ * Scheduling and canceling a task is O(1) and the task is executed directly on the thread of the wheel, so it neither
+ * registers a BungeeCord scheduler task nor hops to another thread pool. The reconnect tries of the players are
+ * scheduled on their own EventLoop instead, see {@link eu.the5zig.reconnect.ReconnectTask}.
+ */
+public class RetryScheduler {
+
+	/**
+	 * The resolution of the wheel. Reconnect tries don't need to be more precise than that.
+	 */
+	private static final long TICK_MILLIS = 10;
+	private static final int TICKS_PER_WHEEL = 1024;
+
+	private final Logger logger;
+	private final HashedWheelTimer timer;
+
+	public RetryScheduler(Logger logger) {
+		this.logger = logger;
+		this.timer = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("Reconnect Retry Scheduler").setDaemon(true).build(), TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * Schedules a task that should be executed after the specified time.
+	 *
+	 * @param runnable The Runnable that should be executed after the specified time.
+	 * @param time     The amount of time the task should be scheduled.
+	 * @param timeUnit The {@link TimeUnit} of the time parameter.
+	 * @return a Timeout that can be used to cancel the task.
+	 */
+	public Timeout schedule(final Runnable runnable, long time, TimeUnit timeUnit) {
+		return timer.newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				try {
+					runnable.run();
+				} catch (Throwable t) {
+					logger.log(Level.SEVERE, "Could not execute scheduled reconnect task", t);
+				}
+			}
+		}, time, timeUnit);
+	}
+
+	/**
+	 * Stops the wheel. All tasks that haven't been executed yet are discarded.
+	 */
+	public void shutdown() {
+		timer.stop();
+	}
+
+}
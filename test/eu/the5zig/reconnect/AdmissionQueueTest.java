@@ -0,0 +1,121 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.BungeeServerInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdmissionQueueTest {
+
+	private Reconnect instance;
+	private BungeeServerInfo target;
+	private AdmissionQueue queue;
+
+	@Before
+	public void setUp() {
+		instance = mock(Reconnect.class);
+		when(instance.getLogger()).thenReturn(Logger.getAnonymousLogger());
+		when(instance.getMetrics()).thenReturn(new ReconnectMetrics());
+		target = mock(BungeeServerInfo.class);
+		when(target.getName()).thenReturn("lobby");
+		when(instance.getAdmissionBatchSize(target)).thenReturn(10);
+		queue = new AdmissionQueue(instance, target);
+	}
+
+	@Test
+	public void admitsHigherPriorityFirstThenLongestWaiting() {
+		ReconnectTask lateDefault = task(0, 300);
+		ReconnectTask earlyDefault = task(0, 100);
+		ReconnectTask vip = task(5, 200);
+		ReconnectTask staff = task(10, 400);
+		queue.offer(lateDefault);
+		queue.offer(earlyDefault);
+		queue.offer(vip);
+		queue.offer(staff);
+
+		queue.drain(10);
+
+		InOrder order = inOrder(staff, vip, earlyDefault, lateDefault);
+		order.verify(staff).connect();
+		order.verify(vip).connect();
+		order.verify(earlyDefault).connect();
+		order.verify(lateDefault).connect();
+	}
+
+	@Test
+	public void drainsOnlyOneBatchAtATime() {
+		ReconnectTask first = task(0, 100);
+		ReconnectTask second = task(0, 200);
+		ReconnectTask third = task(0, 300);
+		queue.offer(first);
+		queue.offer(second);
+		queue.offer(third);
+
+		queue.drain(2);
+
+		verify(first).connect();
+		verify(second).connect();
+		verify(third, never()).connect();
+		assertEquals(1, queue.getDepth());
+		assertTrue(queue.contains(third));
+		assertFalse(queue.contains(first));
+
+		queue.drain(2);
+
+		verify(third).connect();
+		assertEquals(0, queue.getDepth());
+		assertEquals(3, queue.getMaxDepth());
+		assertEquals(1, instance.getMetrics().getDrainTime().getCount());
+	}
+
+	@Test
+	public void queuesEachTaskOnlyOnce() {
+		ReconnectTask task = task(0, 100);
+		queue.offer(task);
+		queue.offer(task);
+
+		assertEquals(1, queue.getDepth());
+	}
+
+	@Test
+	public void removedTaskIsNotAdmitted() {
+		ReconnectTask task = task(0, 100);
+		queue.offer(task);
+		queue.remove(task);
+
+		queue.drain(10);
+
+		verify(task, never()).connect();
+		assertFalse(queue.contains(task));
+	}
+
+	@Test
+	public void connectsImmediatelyWithoutBatching() {
+		when(instance.getAdmissionBatchSize(target)).thenReturn(0);
+		ReconnectTask task = task(0, 100);
+
+		queue.offer(task);
+
+		verify(task).connect();
+		assertEquals(0, queue.getDepth());
+	}
+
+	private static ReconnectTask task(int priority, long startTime) {
+		ReconnectTask task = mock(ReconnectTask.class);
+		when(task.getPriority()).thenReturn(priority);
+		when(task.getStartTime()).thenReturn(startTime);
+		return task;
+	}
+
+}
@@ -0,0 +1,153 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.CircuitBreaker.State;
+import net.md_5.bungee.BungeeServerInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakerTest {
+
+	private Reconnect instance;
+	private ReconnectConfig config;
+	private BungeeServerInfo target;
+	private CircuitBreaker breaker;
+
+	@Before
+	public void setUp() {
+		instance = mock(Reconnect.class);
+		config = mock(ReconnectConfig.class);
+		target = mock(BungeeServerInfo.class);
+		when(instance.getLogger()).thenReturn(Logger.getAnonymousLogger());
+		when(instance.getConfig()).thenReturn(config);
+		when(target.getName()).thenReturn("lobby");
+		when(config.getCircuitBreakerThreshold()).thenReturn(3);
+		when(config.getCircuitBreakerDownTime()).thenReturn(30000L);
+		when(config.getCircuitBreakerOpenTime()).thenReturn(60000L);
+		breaker = new CircuitBreaker(instance, target);
+	}
+
+	@Test
+	public void opensAfterTheThresholdOfFailedLogins() {
+		ReconnectTask task = mock(ReconnectTask.class);
+		breaker.recordFailure();
+		breaker.recordFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest(task));
+
+		breaker.recordFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest(task));
+	}
+
+	@Test
+	public void successfulLoginResetsTheFailures() {
+		breaker.recordFailure();
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		breaker.recordFailure();
+
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void unansweredPingsOnlyOpenAfterTheDownTime() {
+		// A normal restart: many unanswered pings, but the server is back before the down-time is over.
+		for (long down = 0; down < 30000; down += 1000) {
+			breaker.recordDown(down);
+		}
+		assertEquals(State.CLOSED, breaker.getState());
+
+		breaker.recordDown(30000);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void halfOpenLetsOnlyOneTaskTry() {
+		when(config.getCircuitBreakerOpenTime()).thenReturn(0L);
+		ReconnectTask probe = mock(ReconnectTask.class);
+		ReconnectTask other = mock(ReconnectTask.class);
+		openBreaker();
+
+		assertTrue(breaker.allowRequest(probe));
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.allowRequest(probe));
+		assertFalse(breaker.allowRequest(other));
+
+		breaker.recordSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest(other));
+	}
+
+	@Test
+	public void failedProbeOpensTheBreakerAgain() {
+		when(config.getCircuitBreakerOpenTime()).thenReturn(0L);
+		openBreaker();
+		assertTrue(breaker.allowRequest(mock(ReconnectTask.class)));
+
+		breaker.recordFailure();
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void serverThatIsStillDownOpensTheBreakerAgain() {
+		when(config.getCircuitBreakerOpenTime()).thenReturn(0L);
+		openBreaker();
+		assertTrue(breaker.allowRequest(mock(ReconnectTask.class)));
+
+		breaker.recordDown(1000);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void releasedProbeIsReplacedByTheNextTask() {
+		when(config.getCircuitBreakerOpenTime()).thenReturn(0L);
+		ReconnectTask probe = mock(ReconnectTask.class);
+		ReconnectTask other = mock(ReconnectTask.class);
+		openBreaker();
+		assertTrue(breaker.allowRequest(probe));
+
+		breaker.release(probe);
+		assertTrue(breaker.allowRequest(other));
+		assertFalse(breaker.allowRequest(probe));
+	}
+
+	@Test
+	public void disabledBreakerNeverOpens() {
+		when(config.getCircuitBreakerThreshold()).thenReturn(0);
+		when(config.getCircuitBreakerDownTime()).thenReturn(0L);
+		for (int i = 0; i < 100; i++) {
+			breaker.recordFailure();
+			breaker.recordDown(i * 60000L);
+		}
+
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void plannedRestartNeverOpens() {
+		when(instance.getPlannedRestart(target)).thenReturn(new PlannedRestart(target, 60000, 10, ""));
+		for (int i = 0; i < 10; i++) {
+			breaker.recordFailure();
+		}
+		breaker.recordDown(60000);
+
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	private void openBreaker() {
+		for (int i = 0; i < 3; i++) {
+			breaker.recordFailure();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+}
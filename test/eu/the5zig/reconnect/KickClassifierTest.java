@@ -0,0 +1,90 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.KickClassifier.Action;
+import eu.the5zig.reconnect.KickClassifier.KickClass;
+import eu.the5zig.reconnect.KickClassifier.MatchType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+
+public class KickClassifierTest {
+
+	private final KickClass defaultClass = new KickClass("default", Action.DISCONNECT, -1);
+	private final KickClass shutdown = new KickClass("shutdown", Action.RECONNECT, -1);
+	private final KickClass restart = new KickClass("restart", Action.RECONNECT, 120000);
+	private final KickClass restartNow = new KickClass("restart-now", Action.RECONNECT, 30000);
+	private final KickClass maintenance = new KickClass("maintenance", Action.FALLBACK, -1);
+	private final KickClass crash = new KickClass("crash", Action.RECONNECT, -1);
+
+	private KickClassifier classifier;
+
+	@Before
+	public void setUp() {
+		classifier = new KickClassifier(defaultClass)
+				.addRule(MatchType.REGEX, "Server (closed|restarting).*", crash)
+				.addRule(MatchType.LITERAL, "Server closed", shutdown)
+				.addRule(MatchType.PREFIX, "Server is restarting", restart)
+				.addRule(MatchType.PREFIX, "Server is restarting now", restartNow)
+				.addRule(MatchType.LITERAL, "&cServer is in maintenance mode", maintenance);
+	}
+
+	@Test
+	public void unknownMessagesGetTheDefaultClass() {
+		assertSame(defaultClass, classify("You have been banned"));
+	}
+
+	@Test
+	public void literalsTakePrecedenceOverRegexes() {
+		assertSame(shutdown, classify("Server closed"));
+		assertSame(crash, classify("Server closed unexpectedly"));
+	}
+
+	@Test
+	public void longestPrefixWins() {
+		assertSame(restart, classify("Server is restarting in 5 seconds"));
+		assertSame(restartNow, classify("Server is restarting now!"));
+	}
+
+	@Test
+	public void prefixesTakePrecedenceOverRegexes() {
+		classifier.addRule(MatchType.REGEX, "Server is .*", crash);
+		assertSame(restart, classify("Server is restarting"));
+	}
+
+	@Test
+	public void colorCodesAreIgnored() {
+		assertSame(maintenance, classify("Server is in maintenance mode"));
+		assertSame(shutdown, classify("\u00A7cServer \u00A7lclosed"));
+	}
+
+	@Test
+	public void resultsAreCachedByTheRawMessage() {
+		BaseComponent[] reason = {new TextComponent("Server closed")};
+		KickClass first = classifier.classify("{\"text\":\"Server closed\"}", reason);
+		// The cache is keyed by the raw message, so the parsed reason isn't looked at again.
+		KickClass second = classifier.classify("{\"text\":\"Server closed\"}", new BaseComponent[]{new TextComponent("You have been banned")});
+
+		assertSame(shutdown, first);
+		assertSame(first, second);
+	}
+
+	@Test
+	public void cacheIsBounded() {
+		String message = "{\"text\":\"Server closed\"}";
+		assertSame(shutdown, classifier.classify(message, new BaseComponent[]{new TextComponent("Server closed")}));
+		for (int i = 0; i < 1000; i++) {
+			classify("You have been banned (#" + i + ")");
+		}
+
+		// The message has been evicted, so its reason is classified again.
+		assertSame(defaultClass, classifier.classify(message, new BaseComponent[]{new TextComponent("You have been banned")}));
+	}
+
+	private KickClass classify(String text) {
+		return classifier.classify(text, new BaseComponent[]{new TextComponent(text)});
+	}
+
+}
@@ -0,0 +1,315 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.api.ServerReconnectEvent;
+import eu.the5zig.reconnect.net.ConnectTemplate;
+import eu.the5zig.reconnect.retry.FixedRetryPolicy;
+import eu.the5zig.reconnect.retry.RetryPolicy;
+import eu.the5zig.reconnect.state.MemoryStateStore;
+import eu.the5zig.reconnect.util.MessageTemplate;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.ServerConnection;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.event.ServerSwitchEvent;
+import net.md_5.bungee.netty.ChannelWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Lets many threads kick, switch and cancel the same players and admit their reconnect tasks through the admission
+ * queue at the same time, while the tasks of the players run on several event loops.
+ */
+public class ReconnectTaskContentionTest {
+
+	private static final int EVENT_LOOPS = 4;
+	private static final int PLAYERS = 16;
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 1000;
+
+	private NioEventLoopGroup group;
+	private Reconnect instance;
+	private BungeeServerInfo target;
+	private TrackingAdmissionQueue admissionQueue;
+
+	private final List<UserConnection> users = new ArrayList<>();
+	private final List<ServerConnection> servers = new ArrayList<>();
+	private final ConcurrentHashMap<UUID, AtomicInteger> logins = new ConcurrentHashMap<>();
+	private final AtomicReference<String> loginOffEventLoop = new AtomicReference<>();
+
+	@Before
+	public void setUp() throws ReflectiveOperationException {
+		group = new NioEventLoopGroup(EVENT_LOOPS);
+		target = mock(BungeeServerInfo.class);
+		when(target.getName()).thenReturn("lobby");
+
+		ConnectTemplate connectTemplate = mock(ConnectTemplate.class);
+		when(connectTemplate.connect(any(UserConnection.class), any(EventLoop.class), anyInt())).thenAnswer(new Answer<ChannelFuture>() {
+			@Override
+			public ChannelFuture answer(InvocationOnMock invocation) {
+				UserConnection user = (UserConnection) invocation.getArguments()[0];
+				EventLoop eventLoop = (EventLoop) invocation.getArguments()[1];
+				if (!eventLoop.inEventLoop() || eventLoop != user.getCh().getHandle().eventLoop()) {
+					loginOffEventLoop.set(user.getName());
+				}
+				logins.get(user.getUniqueId()).incrementAndGet();
+				// The login never completes, so the pending connect stays until the end of the test.
+				return mock(ChannelFuture.class);
+			}
+		});
+
+		MessageTemplate empty = mock(MessageTemplate.class);
+		when(empty.isEmpty()).thenReturn(true);
+		RetryPolicy retryPolicy = new FixedRetryPolicy(RetryPolicy.MIN_DELAY);
+		ReconnectConfig config = mock(ReconnectConfig.class);
+		when(config.getRetryPolicy()).thenReturn(retryPolicy);
+		when(config.getConnectTemplate(target)).thenReturn(connectTemplate);
+		when(config.getServerGroups()).thenReturn(mock(ServerGroups.class));
+		when(config.getRaceWidth()).thenReturn(1);
+		when(config.getMaxReconnectTries()).thenReturn(Integer.MAX_VALUE);
+		when(config.getAdmissionBatchSize()).thenReturn(1);
+		when(config.getStateTtl()).thenReturn(60000L);
+		when(config.isIgnored(target)).thenReturn(true);
+		when(config.getReconnectingTitle()).thenReturn(empty);
+		when(config.getConnectingTitle()).thenReturn(empty);
+		when(config.getConnectingActionBar()).thenReturn(empty);
+
+		ServerProber prober = mock(ServerProber.class);
+		when(prober.isAvailable()).thenReturn(true);
+
+		Logger logger = Logger.getAnonymousLogger();
+		logger.setLevel(Level.OFF);
+
+		instance = mock(Reconnect.class, withSettings().spiedInstance(new Reconnect()).defaultAnswer(CALLS_REAL_METHODS).stubOnly());
+		instance.setStateStore(new MemoryStateStore());
+		// The config is only set while the plugin is enabled, and Reconnect reads the field itself.
+		Field configField = Reconnect.class.getDeclaredField("config");
+		configField.setAccessible(true);
+		configField.set(instance, config);
+		admissionQueue = new TrackingAdmissionQueue(instance, target);
+		doReturn(logger).when(instance).getLogger();
+		doReturn(true).when(instance).isUserOnline(any(UserConnection.class));
+		doReturn(prober).when(instance).getProber(target);
+		doReturn(admissionQueue).when(instance).getAdmissionQueue(target);
+
+		for (int i = 0; i < PLAYERS; i++) {
+			Channel channel = mock(Channel.class);
+			when(channel.eventLoop()).thenReturn(group.next());
+			ChannelWrapper ch = mock(ChannelWrapper.class);
+			when(ch.getHandle()).thenReturn(channel);
+
+			ServerConnection server = mock(ServerConnection.class);
+			when(server.getInfo()).thenReturn(target);
+
+			UserConnection user = mock(UserConnection.class);
+			when(user.getName()).thenReturn("Player" + i);
+			when(user.getUniqueId()).thenReturn(UUID.randomUUID());
+			when(user.getCh()).thenReturn(ch);
+			when(user.getServer()).thenReturn(server);
+			// Like BungeeCord, the pending connects aren't synchronized, so they must only be touched on the event loop.
+			when(user.getPendingConnects()).thenReturn(new HashSet<ServerInfo>());
+
+			users.add(user);
+			servers.add(server);
+			logins.put(user.getUniqueId(), new AtomicInteger());
+		}
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		for (ReconnectTask task : instance.getReconnectTasks()) {
+			task.markCanceled();
+		}
+		group.shutdownGracefully(0, 0, TimeUnit.SECONDS).await(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void eachPlayerEndsUpWithOneTaskAndAtMostOneLogin() throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		for (int i = 0; i < THREADS; i++) {
+			final long seed = i;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					try {
+						start.await();
+						for (int j = 0; j < OPERATIONS; j++) {
+							hammer(random.nextInt(PLAYERS), random.nextInt(5));
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "Hammer-" + i).start();
+		}
+		start.countDown();
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertNull(failure.get());
+
+		// Every player is kicked once more, then all tasks that are still alive get the chance to retry.
+		for (int i = 0; i < PLAYERS; i++) {
+			kick(i);
+		}
+		admissionQueue.seen.clear();
+		Thread.sleep(3 * RetryPolicy.MIN_DELAY);
+		awaitEventLoops();
+
+		assertNull("Login started outside of the event loop of " + loginOffEventLoop.get(), loginOffEventLoop.get());
+		assertEquals(PLAYERS, instance.getReconnectTasks().size());
+		int totalLogins = 0;
+		for (UserConnection user : users) {
+			ReconnectTask registered = null;
+			for (ReconnectTask task : instance.getReconnectTasks()) {
+				if (task.getUser() == user) {
+					assertNull("Two tasks registered for " + user.getName(), registered);
+					registered = task;
+				}
+			}
+			assertFalse(registered.isDone());
+			assertTrue("More than one login of " + user.getName(), logins.get(user.getUniqueId()).get() <= 1);
+			totalLogins += logins.get(user.getUniqueId()).get();
+		}
+		assertTrue("No player has been admitted at all", totalLogins > 0);
+		// A task that has been replaced or removed must never retry again.
+		for (ReconnectTask task : admissionQueue.seen) {
+			if (!task.isDone()) {
+				assertTrue("Task of " + task.getUser().getName() + " retries without being registered", instance.getReconnectTasks().contains(task));
+			}
+		}
+	}
+
+	private void hammer(int player, int operation) {
+		UserConnection user = users.get(player);
+		switch (operation) {
+			case 0:
+				kick(player);
+				break;
+			case 1:
+				instance.onServerSwitch(new ServerSwitchEvent(user));
+				break;
+			case 2: {
+				ReconnectTask task = getTask(user);
+				if (task != null) {
+					instance.cancelReconnectTask(task);
+				}
+				break;
+			}
+			case 3: {
+				ReconnectTask task = getTask(user);
+				if (task != null) {
+					admissionQueue.offer(task);
+				}
+				admissionQueue.drain(PLAYERS / 2);
+				break;
+			}
+			default: {
+				ReconnectTask task = getTask(user);
+				if (task != null) {
+					task.connect();
+				}
+				break;
+			}
+		}
+	}
+
+	private void kick(int player) {
+		UserConnection user = users.get(player);
+		instance.reconnectIfOnline(user, servers.get(player), new ServerReconnectEvent(user, target, new Callback<ServerReconnectEvent>() {
+			@Override
+			public void done(ServerReconnectEvent result, Throwable error) {
+			}
+		}));
+	}
+
+	private ReconnectTask getTask(UserConnection user) {
+		for (ReconnectTask task : instance.getReconnectTasks()) {
+			if (task.getUser() == user) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	private void awaitEventLoops() throws InterruptedException {
+		List<EventLoop> eventLoops = new ArrayList<>();
+		for (UserConnection user : users) {
+			eventLoops.add(user.getCh().getHandle().eventLoop());
+		}
+		final CountDownLatch done = new CountDownLatch(eventLoops.size());
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Remembers every task that joins the queue or asks for its turn, which every waiting task does on each retry.
+	 */
+	private static class TrackingAdmissionQueue extends AdmissionQueue {
+
+		private final Set<ReconnectTask> seen = Collections.newSetFromMap(new ConcurrentHashMap<ReconnectTask, Boolean>());
+
+		private TrackingAdmissionQueue(Reconnect instance, BungeeServerInfo target) {
+			super(instance, target);
+		}
+
+		@Override
+		public void offer(ReconnectTask task) {
+			seen.add(task);
+			super.offer(task);
+		}
+
+		@Override
+		public boolean contains(ReconnectTask task) {
+			seen.add(task);
+			return super.contains(task);
+		}
+
+	}
+
+}
@@ -0,0 +1,138 @@
+package eu.the5zig.reconnect;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.ServerConnection;
+import net.md_5.bungee.UserConnection;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.netty.ChannelWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReconnectTaskEventLoopTest {
+
+	private NioEventLoopGroup group;
+	private EventLoop eventLoop;
+	private Reconnect instance;
+	private UserConnection user;
+	private BungeeServerInfo target;
+	private ReconnectTask task;
+
+	@Before
+	public void setUp() {
+		group = new NioEventLoopGroup(1);
+		eventLoop = group.next();
+
+		Channel channel = mock(Channel.class);
+		when(channel.eventLoop()).thenReturn(eventLoop);
+		ChannelWrapper ch = mock(ChannelWrapper.class);
+		when(ch.getHandle()).thenReturn(channel);
+
+		user = mock(UserConnection.class);
+		when(user.getUniqueId()).thenReturn(UUID.randomUUID());
+		when(user.getCh()).thenReturn(ch);
+
+		instance = mock(Reconnect.class);
+		when(instance.getLogger()).thenReturn(Logger.getAnonymousLogger());
+		target = mock(BungeeServerInfo.class);
+
+		task = new ReconnectTask(instance, mock(ProxyServer.class), user, mock(ServerConnection.class), target, 0, 0);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		group.shutdownGracefully(0, 0, TimeUnit.SECONDS).await(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void retriesRunOnTheEventLoopOfTheUser() throws InterruptedException {
+		final CountDownLatch retried = new CountDownLatch(1);
+		final AtomicBoolean inEventLoop = new AtomicBoolean();
+		// The user went offline, so the first retry cancels the task.
+		when(instance.isUserOnline(user)).thenReturn(false);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				inEventLoop.set(eventLoop.inEventLoop());
+				retried.countDown();
+				return null;
+			}
+		}).when(instance).cancelReconnectTask(any(ReconnectTask.class));
+
+		task.start(10);
+
+		assertTrue(retried.await(5, TimeUnit.SECONDS));
+		assertTrue(inEventLoop.get());
+	}
+
+	@Test
+	public void loginsAdmittedFromAnotherThreadHopOntoTheEventLoop() throws InterruptedException {
+		final CountDownLatch connecting = new CountDownLatch(1);
+		final AtomicBoolean inEventLoop = new AtomicBoolean();
+		// Pretend that BungeeCord is already connecting the user, so that connect() stops before the login.
+		when(user.getPendingConnects()).thenAnswer(new Answer<Set<ServerInfo>>() {
+			@Override
+			public Set<ServerInfo> answer(InvocationOnMock invocation) {
+				inEventLoop.set(eventLoop.inEventLoop());
+				connecting.countDown();
+				return Collections.<ServerInfo>singleton(target);
+			}
+		});
+
+		task.connect();
+
+		assertTrue(connecting.await(5, TimeUnit.SECONDS));
+		assertTrue(inEventLoop.get());
+		awaitEventLoop();
+		assertEquals(ReconnectTask.State.WAITING, task.getState());
+	}
+
+	@Test
+	public void canceledTaskDoesNotRetry() throws InterruptedException {
+		when(instance.isUserOnline(user)).thenReturn(true);
+
+		task.start(50);
+		task.markCanceled();
+		Thread.sleep(100);
+		awaitEventLoop();
+
+		assertEquals(ReconnectTask.State.CANCELED, task.getState());
+		// The retry never ran, otherwise it would have asked whether the user is online.
+		verify(instance, never()).isUserOnline(user);
+	}
+
+	private void awaitEventLoop() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+}
@@ -0,0 +1,173 @@
+package eu.the5zig.reconnect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ReconnectTaskRegistryTest {
+
+	private static final int THREADS = 16;
+	private static final int PLAYERS = 2000;
+
+	private ReconnectTaskRegistry registry;
+	private ExecutorService executor;
+	private UUID[] players;
+	private ReconnectTask[] tasks;
+
+	@Before
+	public void setUp() {
+		registry = new ReconnectTaskRegistry();
+		executor = Executors.newFixedThreadPool(THREADS);
+		players = new UUID[PLAYERS];
+		tasks = new ReconnectTask[PLAYERS];
+		for (int i = 0; i < PLAYERS; i++) {
+			players[i] = UUID.randomUUID();
+			tasks[i] = mock(ReconnectTask.class);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void registersOnlyOneTaskPerPlayer() throws Exception {
+		final AtomicInteger registered = new AtomicInteger();
+		runConcurrently(new Callable<Void>() {
+			@Override
+			public Void call() {
+				// Every thread kicks every player at the same time, but each player may only get one task.
+				ReconnectTask own = mock(ReconnectTask.class);
+				for (UUID player : players) {
+					if (registry.register(player, own)) {
+						registered.incrementAndGet();
+					}
+				}
+				return null;
+			}
+		});
+
+		assertEquals(PLAYERS, registered.get());
+		assertEquals(PLAYERS, registry.size());
+	}
+
+	@Test
+	public void removesEachTaskExactlyOnce() throws Exception {
+		for (int i = 0; i < PLAYERS; i++) {
+			assertTrue(registry.register(players[i], tasks[i]));
+		}
+		final AtomicInteger removed = new AtomicInteger();
+		runConcurrently(new Callable<Void>() {
+			@Override
+			public Void call() {
+				// Server switches remove any task of the player, finished tasks only remove themselves.
+				for (int i = 0; i < PLAYERS; i++) {
+					boolean success = ThreadLocalRandom.current().nextBoolean() ? registry.remove(players[i]) != null : registry.remove(players[i], tasks[i]);
+					if (success) {
+						removed.incrementAndGet();
+					}
+				}
+				return null;
+			}
+		});
+
+		assertEquals(PLAYERS, removed.get());
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void keepsRegistrationsAndRemovalsBalancedUnderMixedLoad() throws Exception {
+		final AtomicInteger registered = new AtomicInteger();
+		final AtomicInteger removed = new AtomicInteger();
+		runConcurrently(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int n = 0; n < 50000; n++) {
+					int i = random.nextInt(PLAYERS);
+					switch (random.nextInt(3)) {
+						case 0:
+							// kick
+							if (registry.register(players[i], tasks[i])) {
+								registered.incrementAndGet();
+							}
+							break;
+						case 1:
+							// server switch
+							if (registry.remove(players[i]) != null) {
+								removed.incrementAndGet();
+							}
+							break;
+						default:
+							// task finished or gave up
+							if (registry.remove(players[i], tasks[i])) {
+								removed.incrementAndGet();
+							}
+							break;
+					}
+				}
+				return null;
+			}
+		});
+
+		// No task may be lost or removed twice.
+		assertEquals(registered.get() - removed.get(), registry.size());
+	}
+
+	@Test
+	public void staleTaskDoesNotRemoveNewTask() {
+		UUID player = players[0];
+		ReconnectTask old = tasks[0];
+		ReconnectTask current = tasks[1];
+
+		assertTrue(registry.register(player, old));
+		assertFalse(registry.register(player, current));
+		assertSame(old, registry.remove(player));
+		assertTrue(registry.register(player, current));
+
+		assertFalse(registry.remove(player, old));
+		assertSame(current, registry.get(player));
+		assertTrue(registry.remove(player, current));
+		assertNull(registry.get(player));
+		assertFalse(registry.contains(player));
+	}
+
+	private void runConcurrently(final Callable<Void> work) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					return work.call();
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+	}
+
+}
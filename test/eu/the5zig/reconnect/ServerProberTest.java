@@ -0,0 +1,133 @@
+package eu.the5zig.reconnect;
+
+import eu.the5zig.reconnect.util.RetryScheduler;
+import net.md_5.bungee.BungeeServerInfo;
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.ServerPing;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerProberTest {
+
+	private Reconnect instance;
+	private RetryScheduler scheduler;
+	private BungeeServerInfo target;
+	private ServerProfiles.Profile profile;
+	private ServerProber prober;
+	/**
+	 * Whether the server answers the next ping.
+	 */
+	private boolean up;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		instance = mock(Reconnect.class);
+		ReconnectConfig config = mock(ReconnectConfig.class);
+		when(config.isAdaptive()).thenReturn(true);
+		when(config.getReadinessMarker()).thenReturn("");
+		when(instance.getConfig()).thenReturn(config);
+		when(instance.getLogger()).thenReturn(Logger.getAnonymousLogger());
+		scheduler = mock(RetryScheduler.class);
+		when(instance.getRetryScheduler()).thenReturn(scheduler);
+		target = mock(BungeeServerInfo.class);
+		when(target.getName()).thenReturn("lobby");
+		when(instance.getCircuitBreaker(target)).thenReturn(mock(CircuitBreaker.class));
+		profile = mock(ServerProfiles.Profile.class);
+		ServerProfiles profiles = mock(ServerProfiles.class);
+		when(profiles.get(target)).thenReturn(profile);
+		when(instance.getServerProfiles()).thenReturn(profiles);
+
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				Callback<ServerPing> callback = (Callback<ServerPing>) invocation.getArguments()[0];
+				if (up) {
+					callback.done(new ServerPing(), null);
+				} else {
+					callback.done(null, new Exception("Connection refused"));
+				}
+				return null;
+			}
+		}).when(target).ping(any(Callback.class));
+
+		prober = new ServerProber(instance, target);
+	}
+
+	@Test
+	public void serverThatNeverWentDownIsNotLearned() {
+		up = true;
+		prober.subscribe(UUID.randomUUID());
+		assertTrue(prober.isAvailable());
+
+		verify(profile, never()).recordRestart(anyLong());
+	}
+
+	@Test
+	public void outageIsLearnedOnceTheServerIsBack() {
+		up = false;
+		prober.subscribe(UUID.randomUUID());
+		assertFalse(prober.isAvailable());
+		nextProbe();
+		verify(profile, never()).recordRestart(anyLong());
+
+		up = true;
+		nextProbe();
+		assertTrue(prober.isAvailable());
+		verify(profile, times(1)).recordRestart(anyLong());
+
+		// Further pings of the same outage are not recorded again.
+		nextProbe();
+		verify(profile, times(1)).recordRestart(anyLong());
+	}
+
+	@Test
+	public void giveUpIsLearnedOncePerOutage() {
+		up = false;
+		prober.subscribe(UUID.randomUUID());
+		prober.recordGiveUp();
+		prober.recordGiveUp();
+		verify(profile, times(1)).recordGiveUp(anyLong());
+
+		// The outage has already been learned as too long, so its end isn't recorded anymore.
+		up = true;
+		nextProbe();
+		verify(profile, never()).recordRestart(anyLong());
+	}
+
+	@Test
+	public void giveUpWithoutAnOutageIsNotLearned() {
+		up = true;
+		prober.subscribe(UUID.randomUUID());
+		prober.recordGiveUp();
+
+		verify(profile, never()).recordGiveUp(anyLong());
+	}
+
+	private void nextProbe() {
+		ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+		verify(scheduler, atLeastOnce()).schedule(captor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+		captor.getValue().run();
+	}
+
+}
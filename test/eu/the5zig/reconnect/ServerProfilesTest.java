@@ -0,0 +1,44 @@
+package eu.the5zig.reconnect;
+
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.config.Configuration;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServerProfilesTest {
+
+	@Test
+	public void profilesOfServersWithDotsInTheirNameSurviveSaving() {
+		ServerInfo lobby = server("lobby.1");
+		ServerInfo survival = server("survival");
+		ServerProfiles profiles = new ServerProfiles();
+		for (int i = 0; i < 3; i++) {
+			profiles.get(lobby).recordRestart(20000 + i * 1000);
+			profiles.get(lobby).recordLatency(100 + i * 10);
+			profiles.get(survival).recordRestart(60000);
+		}
+
+		Configuration configuration = profiles.save();
+		assertEquals(Collections.singleton("profiles"), configuration.getKeys());
+
+		ServerProfiles loaded = new ServerProfiles();
+		loaded.load(configuration);
+		assertEquals(profiles.get(lobby).getDeadline(3, 1000, 600000), loaded.get(lobby).getDeadline(3, 1000, 600000));
+		assertEquals(profiles.get(lobby).getConnectTimeout(3, 5000), loaded.get(lobby).getConnectTimeout(3, 5000));
+		assertEquals(profiles.get(survival).getDeadline(3, 1000, 600000), loaded.get(survival).getDeadline(3, 1000, 600000));
+		// Nothing has been learned about a server that isn't in the file.
+		assertEquals(0, loaded.get(server("lobby")).getDeadline(3, 1000, 600000));
+	}
+
+	private static ServerInfo server(String name) {
+		ServerInfo server = mock(ServerInfo.class);
+		when(server.getName()).thenReturn(name);
+		return server;
+	}
+
+}
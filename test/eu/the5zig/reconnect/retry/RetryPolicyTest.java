@@ -0,0 +1,55 @@
+package eu.the5zig.reconnect.retry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+	@Test
+	public void fixedPolicyAlwaysWaitsTheSameTime() {
+		RetryPolicy policy = new FixedRetryPolicy(1000);
+		for (int tries = 0; tries < 10; tries++) {
+			assertEquals(1000, policy.nextDelay(tries, 1000));
+		}
+	}
+
+	@Test
+	public void exponentialPolicyDoublesUpToTheMaximum() {
+		RetryPolicy policy = new ExponentialRetryPolicy(1000, 10000);
+		for (int tries = 0; tries < 40; tries++) {
+			long expected = Math.min(1000L << Math.min(tries, 30), 10000);
+			long delay = policy.nextDelay(tries, 0);
+			// At most a quarter of the delay is subtracted as jitter.
+			assertTrue(delay <= expected);
+			assertTrue(delay >= expected - expected / 4);
+		}
+	}
+
+	@Test
+	public void decorrelatedJitterStaysBetweenBaseAndMaximum() {
+		RetryPolicy policy = new DecorrelatedJitterRetryPolicy(1000, 10000);
+		long delay = 0;
+		for (int tries = 0; tries < 1000; tries++) {
+			long next = policy.nextDelay(tries, delay);
+			assertTrue(next >= 1000);
+			assertTrue(next <= 10000);
+			assertTrue(next <= Math.max(delay, 1000) * 3);
+			delay = next;
+		}
+	}
+
+	@Test
+	public void noPolicyWaitsLessThanTheMinimumDelay() {
+		RetryPolicy[] policies = {new FixedRetryPolicy(0), new ExponentialRetryPolicy(0, 0), new DecorrelatedJitterRetryPolicy(0, 0)};
+		for (RetryPolicy policy : policies) {
+			long delay = 0;
+			for (int tries = 0; tries < 100; tries++) {
+				delay = policy.nextDelay(tries, delay);
+				assertTrue(policy.getClass().getSimpleName() + " returned " + delay, delay >= RetryPolicy.MIN_DELAY);
+			}
+		}
+	}
+
+}
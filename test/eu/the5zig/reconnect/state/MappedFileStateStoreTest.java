@@ -0,0 +1,229 @@
+package eu.the5zig.reconnect.state;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MappedFileStateStoreTest {
+
+	private static final int CAPACITY = 64;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private MappedFileStateStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(folder.getRoot(), "states.dat");
+		store = new MappedFileStateStore(file, CAPACITY);
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+	}
+
+	@Test
+	public void storesAndReadsBackAState() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+
+		ReconnectState state = store.get(uuid);
+		assertNotNull(state);
+		assertEquals("lobby", state.getServer());
+		assertEquals(now, state.getStartTime());
+		assertEquals(now + 60000, state.getExpiresAt());
+		assertNull(store.get(UUID.randomUUID()));
+	}
+
+	@Test
+	public void replacesTheStateOfAPlayer() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+		store.put(uuid, new ReconnectState("survival", now + 1, now + 60001));
+
+		assertEquals("survival", store.get(uuid).getServer());
+		store.remove(uuid);
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void expiredStatesAreNotReturned() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now - 2000, now - 1000));
+
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void statesSurviveReopening() throws IOException {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+		store.close();
+
+		store = new MappedFileStateStore(file, CAPACITY);
+		assertEquals("lobby", store.get(uuid).getServer());
+	}
+
+	@Test
+	public void storeWithAnotherCapacityIsCleared() throws IOException {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+		store.close();
+
+		store = new MappedFileStateStore(file, CAPACITY * 2);
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void expiredSlotsAreReusedWhenTheStoreIsFull() {
+		long now = System.currentTimeMillis();
+		UUID[] expired = new UUID[CAPACITY];
+		for (int i = 0; i < CAPACITY; i++) {
+			expired[i] = UUID.randomUUID();
+			store.put(expired[i], new ReconnectState("old", now - 2000, now - 1000));
+		}
+		UUID[] fresh = new UUID[CAPACITY];
+		for (int i = 0; i < CAPACITY; i++) {
+			fresh[i] = UUID.randomUUID();
+			store.put(fresh[i], new ReconnectState("server-" + i, now, now + 60000));
+		}
+
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals("server-" + i, store.get(fresh[i]).getServer());
+			assertNull(store.get(expired[i]));
+		}
+	}
+
+	@Test
+	public void fullStoreDropsNewStates() {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < CAPACITY; i++) {
+			store.put(UUID.randomUUID(), new ReconnectState("lobby", now, now + 60000));
+		}
+		UUID uuid = UUID.randomUUID();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void removedRecordsDoNotLeaveDeletedSlotsBehind() {
+		long now = System.currentTimeMillis();
+		// All three players hash to the same slot, so they are stored in three consecutive slots.
+		UUID first = colliding(0);
+		UUID second = colliding(1);
+		UUID third = colliding(2);
+		store.put(first, new ReconnectState("lobby", now, now + 60000));
+		store.put(second, new ReconnectState("lobby", now, now + 60000));
+		store.put(third, new ReconnectState("lobby", now, now + 60000));
+
+		// The third player can only be found by probing past the second one.
+		store.remove(second);
+		assertEquals(1, store.getDeletedCount());
+		assertEquals("lobby", store.get(third).getServer());
+
+		store.remove(third);
+		assertEquals(0, store.getDeletedCount());
+		assertEquals("lobby", store.get(first).getServer());
+		assertNull(store.get(second));
+		assertNull(store.get(third));
+	}
+
+	@Test
+	public void churnDoesNotLeaveDeletedSlotsBehind() {
+		long now = System.currentTimeMillis();
+		List<UUID> players = new ArrayList<>();
+		for (int round = 0; round < 16; round++) {
+			for (int i = 0; i < CAPACITY / 2; i++) {
+				UUID uuid = UUID.randomUUID();
+				players.add(uuid);
+				store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+			}
+			Collections.shuffle(players);
+			for (UUID uuid : players) {
+				store.remove(uuid);
+			}
+			players.clear();
+		}
+
+		assertEquals(0, store.getDeletedCount());
+	}
+
+	@Test
+	public void expiredRecordsAreRemovedWhenReopening() throws IOException {
+		long now = System.currentTimeMillis();
+		UUID first = colliding(0);
+		store.put(first, new ReconnectState("lobby", now, now + 60000));
+		store.put(colliding(1), new ReconnectState("lobby", now, now + 60000));
+		store.put(colliding(2), new ReconnectState("lobby", now - 2000, now - 1000));
+		store.remove(colliding(1));
+		assertEquals(1, store.getDeletedCount());
+		store.close();
+
+		store = new MappedFileStateStore(file, CAPACITY);
+		assertEquals(0, store.getDeletedCount());
+		assertEquals("lobby", store.get(first).getServer());
+	}
+
+	@Test
+	public void tooLongServerNamesAreNotStored() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 65; i++) {
+			name.append('a');
+		}
+		store.put(uuid, new ReconnectState(name.toString(), now, now + 60000));
+
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void corruptRecordsAreDropped() throws IOException {
+		UUID uuid = colliding(0);
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+		store.close();
+
+		// Overwrite the name length of the record with a value that doesn't fit into a signed byte.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(16 + 5 * 128 + 33);
+			raf.write(200);
+		}
+
+		store = new MappedFileStateStore(file, CAPACITY);
+		assertNull(store.get(uuid));
+		assertNull(store.get(uuid));
+	}
+
+	/**
+	 * @return a UniqueId that is stored in the same slot as all other UniqueIds returned by this method.
+	 */
+	private static UUID colliding(int i) {
+		// The hash code of a UniqueId whose most significant bits are 0 is its least significant bits.
+		return new UUID(0, 5 + i * CAPACITY);
+	}
+
+}
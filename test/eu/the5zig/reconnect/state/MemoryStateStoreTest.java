@@ -0,0 +1,54 @@
+package eu.the5zig.reconnect.state;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MemoryStateStoreTest {
+
+	private final MemoryStateStore store = new MemoryStateStore();
+
+	@Test
+	public void storesReplacesAndRemovesStates() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now, now + 60000));
+		assertEquals("lobby", store.get(uuid).getServer());
+
+		store.put(uuid, new ReconnectState("survival", now, now + 60000));
+		assertEquals("survival", store.get(uuid).getServer());
+
+		store.remove(uuid);
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void expiredStatesAreNotReturned() {
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		store.put(uuid, new ReconnectState("lobby", now - 2000, now - 1000));
+
+		assertNull(store.get(uuid));
+	}
+
+	@Test
+	public void freshStatesSurviveThePurge() {
+		long now = System.currentTimeMillis();
+		UUID expired = UUID.randomUUID();
+		store.put(expired, new ReconnectState("lobby", now - 2000, now - 1000));
+		UUID[] fresh = new UUID[2048];
+		for (int i = 0; i < fresh.length; i++) {
+			fresh[i] = UUID.randomUUID();
+			store.put(fresh[i], new ReconnectState("lobby", now, now + 60000));
+		}
+
+		assertNull(store.get(expired));
+		for (UUID uuid : fresh) {
+			assertEquals("lobby", store.get(uuid).getServer());
+		}
+	}
+
+}
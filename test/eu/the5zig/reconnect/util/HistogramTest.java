@@ -0,0 +1,106 @@
+package eu.the5zig.reconnect.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+	@Test
+	public void emptyHistogramReturnsZero() {
+		Histogram histogram = new Histogram();
+
+		assertEquals(0, histogram.getPercentile(0.99));
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getCount());
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		for (long value = 0; value < 8; value++) {
+			Histogram histogram = new Histogram();
+			histogram.record(value);
+			histogram.record(Long.MAX_VALUE / 2);
+
+			assertEquals(value, histogram.getPercentile(0.5));
+		}
+	}
+
+	@Test
+	public void bucketsAreAccurateToAnEighth() {
+		for (long value = 8; value > 0 && value < Long.MAX_VALUE / 4; value = value * 3 / 2 + 1) {
+			Histogram histogram = new Histogram();
+			histogram.record(value);
+			// A larger value, so that the percentile isn't capped at the maximum.
+			histogram.record(value * 2);
+
+			long percentile = histogram.getPercentile(0.5);
+			assertTrue(value + " reported as " + percentile, percentile >= value);
+			assertTrue(value + " reported as " + percentile, percentile <= value + value / 8);
+		}
+	}
+
+	@Test
+	public void percentileIsCappedAtTheMaximum() {
+		Histogram histogram = new Histogram();
+		histogram.record(1000);
+
+		assertEquals(1000, histogram.getPercentile(0.99));
+		assertEquals(1000, histogram.getMax());
+	}
+
+	@Test
+	public void percentilesFollowTheDistribution() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(50.5, histogram.getMean(), 0.001);
+		// 50 falls into the bucket [48, 52), 99 into [96, 104).
+		assertEquals(51, histogram.getPercentile(0.5));
+		assertEquals(100, histogram.getPercentile(0.99));
+	}
+
+	@Test
+	public void negativeAndHugeValuesAreRecorded() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(0, histogram.getPercentile(0.5));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void concurrentRecordsAreNotLost() throws InterruptedException {
+		final Histogram histogram = new Histogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						histogram.record(i);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(80000, histogram.getCount());
+		assertEquals(8L * 9999 * 10000 / 2, histogram.getSum());
+		assertEquals(9999, histogram.getMax());
+	}
+
+}